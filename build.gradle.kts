@@ -3,6 +3,7 @@ plugins {
     id("java-base")
     id("java-library")
     id("maven-publish")
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 
@@ -50,6 +51,13 @@ configurations.all {
     }
 }
 
+jmh {
+    jmhVersion = "1.37"
+    warmupIterations = 2
+    iterations = 5
+    fork = 1
+}
+
 publishing {
     repositories {
         maven {
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2023 timesnake
+ */
+
+package de.timesnake.library.network;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SaveBenchmark {
+
+  @Param({"100", "1000", "5000"})
+  public int saves;
+
+  private final UUID member = UUID.randomUUID();
+
+  private SyntheticNetwork network;
+  private NetworkUtils networkUtils;
+  private UUID owner;
+  private String saveName;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    this.network = new SyntheticNetwork().generateSaves(this.saves, this.member);
+    this.networkUtils = new NetworkUtils(this.network.getNetworkPath());
+
+    Map<UUID, List<String>> memberSaves = this.networkUtils.getMemberSaveNames(this.member, SyntheticNetwork.TYPE,
+        SyntheticNetwork.TASK);
+    Map.Entry<UUID, List<String>> entry = memberSaves.entrySet().iterator().next();
+    this.owner = entry.getKey();
+    this.saveName = entry.getValue().getFirst();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    this.networkUtils.close();
+    this.network.delete();
+  }
+
+  @Benchmark
+  public Map<UUID, List<String>> getMemberSaveNames() {
+    return this.networkUtils.getMemberSaveNames(this.member, SyntheticNetwork.TYPE, SyntheticNetwork.TASK);
+  }
+
+  @Benchmark
+  public List<UUID> getPrivateSaveMembers() {
+    return this.networkUtils.getPrivateSaveMembers(this.owner, SyntheticNetwork.TYPE, SyntheticNetwork.TASK,
+        this.saveName);
+  }
+}
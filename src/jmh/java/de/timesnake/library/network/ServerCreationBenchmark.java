@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2023 timesnake
+ */
+
+package de.timesnake.library.network;
+
+import de.timesnake.library.network.NetworkServer.CopyType;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ServerCreationBenchmark {
+
+  private static final int BATCH_SIZE = 8;
+
+  @Param({"NONE", "COPY", "SYNC"})
+  public CopyType worldCopyType;
+
+  @Param({"100", "1000"})
+  public int templateFiles;
+
+  @Param({"64", "512"})
+  public int regionFiles;
+
+  @Param({"262144"})
+  public int regionFileSize;
+
+  private SyntheticNetwork network;
+  private NetworkUtils networkUtils;
+  private int counter;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    this.network = new SyntheticNetwork()
+        .generateTemplates(this.templateFiles)
+        .generateWorld(this.regionFiles, this.regionFileSize);
+    this.networkUtils = new NetworkUtils(this.network.getNetworkPath());
+  }
+
+  /**
+   * Deletes the servers of the invocation, COPY servers hold a full world copy each.
+   */
+  @TearDown(Level.Invocation)
+  public void cleanServers() throws IOException {
+    this.network.cleanServers();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    this.networkUtils.close();
+    this.network.delete();
+  }
+
+  /**
+   * Every invocation creates a server with a new name, so that it is not taken for an update of the
+   * previous one.
+   */
+  @Benchmark
+  public ServerCreationResult createServer() {
+    String name = String.valueOf(this.counter++);
+    return this.networkUtils.createServer(this.network.createServer(name, this.worldCopyType));
+  }
+
+  @Benchmark
+  public Map<String, ServerCreationResult> createServers() {
+    int batch = this.counter++;
+    List<NetworkServer> servers = new ArrayList<>(BATCH_SIZE);
+    for (int i = 0; i < BATCH_SIZE; i++) {
+      servers.add(this.network.createServer(batch + "-" + i, this.worldCopyType));
+    }
+    return this.networkUtils.createServers(servers);
+  }
+}
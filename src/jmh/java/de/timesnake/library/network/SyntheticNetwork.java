@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2023 timesnake
+ */
+
+package de.timesnake.library.network;
+
+import de.timesnake.library.basic.util.ServerType;
+import org.apache.commons.io.FileUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Generates a network directory with template, world and save trees of configurable size.
+ */
+public class SyntheticNetwork {
+
+  public static final ServerType TYPE = ServerType.GAME;
+  public static final String TASK = "bench";
+  public static final String WORLD_NAME = "world";
+
+  private static final int CONFIG_FILE_SIZE = 2 * 1024;
+  private static final int JAR_FILE_SIZE = 512 * 1024;
+
+  private final Path networkPath;
+  private final Random random = new Random(42);
+
+  public SyntheticNetwork() throws IOException {
+    this.networkPath = Files.createTempDirectory("network-bench");
+  }
+
+  public Path getNetworkPath() {
+    return networkPath;
+  }
+
+  /**
+   * Creates basis, type basis and task default layers. Every tenth file is a plugin jar, the type
+   * basis overrides a quarter of the basis files.
+   */
+  public SyntheticNetwork generateTemplates(int fileCount) throws IOException {
+    Path serverTemplates = this.networkPath.resolve(Network.TEMPLATE_DIR_NAME).resolve(Network.SERVERS_TEMPLATE_NAME);
+    Path basis = serverTemplates.resolve(Network.BASIS_DIRECTORY);
+    Path typeBasis = serverTemplates.resolve(TYPE.getShortName()).resolve(Network.BASIS_DIRECTORY);
+    Path taskDefault = serverTemplates.resolve(TYPE.getShortName()).resolve(TASK).resolve(Network.DEFAULT_DIRECTORY);
+
+    for (int i = 0; i < fileCount; i++) {
+      Path dir = basis.resolve("plugins").resolve("plugin" + (i / 10));
+      if (i % 10 == 0) {
+        this.writeFile(basis.resolve("plugins").resolve("plugin" + (i / 10) + ".jar"), JAR_FILE_SIZE);
+      } else {
+        this.writeFile(dir.resolve("config" + i + ".yml"), CONFIG_FILE_SIZE);
+      }
+
+      if (i % 4 == 1) {
+        this.writeFile(typeBasis.resolve("plugins").resolve("plugin" + (i / 10)).resolve("config" + i + ".yml"),
+            CONFIG_FILE_SIZE);
+      }
+    }
+
+    this.writeFile(taskDefault.resolve("task.yml"), CONFIG_FILE_SIZE);
+    return this;
+  }
+
+  public SyntheticNetwork generateWorld(int regionFileCount, int regionFileSize) throws IOException {
+    Path world = this.networkPath.resolve(Network.TEMPLATE_DIR_NAME).resolve(Network.WORLDS_TEMPLATE_NAME)
+        .resolve(TYPE.getShortName()).resolve(TASK).resolve(WORLD_NAME);
+
+    this.writeFile(world.resolve("level.dat"), 4 * 1024);
+    for (int i = 0; i < regionFileCount; i++) {
+      this.writeFile(world.resolve("region").resolve("r." + (i % 32) + "." + (i / 32) + ".mca"), regionFileSize);
+    }
+    return this;
+  }
+
+  /**
+   * Creates private saves with owner and member uuids. Every save has the given member as member.
+   */
+  public SyntheticNetwork generateSaves(int saveCount, UUID member) throws IOException {
+    Path task = this.networkPath.resolve(Network.TEMPLATE_DIR_NAME).resolve(Network.SERVERS_TEMPLATE_NAME)
+        .resolve(TYPE.getShortName()).resolve(TASK);
+
+    for (int i = 0; i < saveCount; i++) {
+      UUID owner = new UUID(this.random.nextLong(), this.random.nextLong());
+      Path save = task.resolve(owner.toString()).resolve("save" + i);
+      Files.createDirectories(save);
+
+      List<String> members = List.of(member.toString(), UUID.randomUUID().toString());
+      Files.writeString(save.resolve(Network.OWN_SERVER_INFO_FILE_NAME),
+          Network.OWN_SERVER_OWNER_UUID + " = \"" + owner + "\"\n"
+              + Network.OWN_SERVER_MEMBER_UUIDS + " = [\"" + String.join("\", \"", members) + "\"]\n");
+    }
+    return this;
+  }
+
+  public NetworkServer createServer(String name, NetworkServer.CopyType worldCopyType) {
+    return NetworkServer.createTmpServer(TYPE, name)
+        .setTask(TASK)
+        .setPort(25566)
+        .setVelocitySecret("secret")
+        .setChannelHostName("localhost")
+        .setChannelListenHostName("0.0.0.0")
+        .setChannelProxyHostName("localhost")
+        .setChannelProxyServerName("proxy")
+        .setChannelProxyPort(25700)
+        .options(o -> o.setWorldCopyType(worldCopyType));
+  }
+
+  /**
+   * Deletes the created servers.
+   */
+  public void cleanServers() throws IOException {
+    FileUtils.deleteDirectory(this.networkPath.resolve(Network.SERVERS).toFile());
+  }
+
+  public void delete() throws IOException {
+    FileUtils.deleteDirectory(this.networkPath.toFile());
+  }
+
+  private void writeFile(Path file, int size) throws IOException {
+    byte[] content = new byte[size];
+    this.random.nextBytes(content);
+    Files.createDirectories(file.getParent());
+    Files.write(file, content);
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2023 timesnake
+ */
+
+package de.timesnake.library.network;
+
+import de.timesnake.library.network.ConfigTemplateRegistry.ConfigTemplate;
+import de.timesnake.library.network.NetworkServer.CopyType;
+import freemarker.template.TemplateException;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TemplateBenchmark {
+
+  @Param({"100", "1000", "5000"})
+  public int templateFiles;
+
+  private SyntheticNetwork network;
+  private NetworkUtils networkUtils;
+  private NetworkServer server;
+  private int counter;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    this.network = new SyntheticNetwork().generateTemplates(this.templateFiles);
+    this.networkUtils = new NetworkUtils(this.network.getNetworkPath());
+  }
+
+  @Setup(Level.Iteration)
+  public void cleanServers() throws IOException {
+    this.network.cleanServers();
+    this.server = this.network.createServer("config", CopyType.NONE);
+    this.networkUtils.copyServerFromTemplate(this.server);
+  }
+
+  /**
+   * Removes the rendered configurations, identical ones would not be written again.
+   */
+  @Setup(Level.Invocation)
+  public void resetConfigurations() throws IOException {
+    Path serverPath = this.network.getNetworkPath().resolve(Network.SERVERS).resolve(this.server.getName());
+    for (ConfigTemplate template : this.networkUtils.getConfigTemplateRegistry().getTemplates()) {
+      Files.deleteIfExists(serverPath.resolve(template.destination().toString()));
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    this.networkUtils.close();
+    this.network.delete();
+  }
+
+  /**
+   * Every invocation copies into a new server directory, existing ones would be updated in place.
+   */
+  @Benchmark
+  public void copyServerFromTemplate() throws IOException {
+    this.networkUtils.copyServerFromTemplate(this.network.createServer(String.valueOf(this.counter++),
+        CopyType.NONE));
+  }
+
+  @Benchmark
+  public void generateConfigurations() throws IOException, TemplateException {
+    this.networkUtils.generateConfigurations(this.server);
+  }
+}
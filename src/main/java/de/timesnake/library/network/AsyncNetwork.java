@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2023 timesnake
+ */
+
+package de.timesnake.library.network;
+
+import de.timesnake.library.basic.util.ServerType;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * Non-blocking facade of {@link Network}. Operations run on the given executor, operations on the
+ * same server (or the same save) are executed one after another in submission order.
+ */
+public class AsyncNetwork implements AutoCloseable {
+
+  private final Network network;
+  private final Executor executor;
+  private final boolean ownsExecutor;
+  // guarded by itself, multi-key registrations must be atomic to not wait on each other
+  private final Map<String, CompletableFuture<?>> tailByKey = new HashMap<>();
+
+  public AsyncNetwork(Network network) {
+    this(network, Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("network-", 0).factory()), true);
+  }
+
+  public AsyncNetwork(Network network, Executor executor) {
+    this(network, executor, false);
+  }
+
+  private AsyncNetwork(Network network, Executor executor, boolean ownsExecutor) {
+    this.network = network;
+    this.executor = executor;
+    this.ownsExecutor = ownsExecutor;
+  }
+
+  public Network getNetwork() {
+    return network;
+  }
+
+  public CompletableFuture<ServerCreationResult> createServer(NetworkServer server) {
+    return this.submit(server.getName(), () -> this.network.createServer(server));
+  }
+
+  public CompletableFuture<Map<String, ServerCreationResult>> createServers(List<NetworkServer> servers) {
+    return this.submit(servers.stream().map(NetworkServer::getName).toList(),
+        () -> this.network.createServers(servers));
+  }
+
+  public CompletableFuture<Boolean> deleteServer(NetworkServerInfo info) {
+    return this.submit(info.getName(), () -> this.network.deleteServer(info));
+  }
+
+  public CompletableFuture<ServerCreationResult> loadPublicSave(NetworkServer server) {
+    return this.submit(server.getName(), () -> this.network.loadPublicSave(server));
+  }
+
+  public CompletableFuture<ServerCreationResult> loadPrivateSave(UUID uuid, NetworkServer server) {
+    return this.submit(server.getName(), () -> this.network.loadPrivateSave(uuid, server));
+  }
+
+  public CompletableFuture<WorldSyncResult> syncWorld(NetworkServerInfo server, String worldName) {
+    return this.submit(server.getName(), () -> this.network.syncWorld(server, worldName));
+  }
+
+  public CompletableFuture<WorldSyncResult> exportAndSyncWorld(String serverName, String worldName, Path exportPath) {
+    return this.submit(List.of(serverName, worldKey(exportPath, worldName)),
+        () -> this.network.exportAndSyncWorld(serverName, worldName, exportPath));
+  }
+
+  public CompletableFuture<WorldSyncResult> rollbackWorld(Path exportPath, String worldName, int version) {
+    return this.submit(worldKey(exportPath, worldName),
+        () -> this.network.rollbackWorld(exportPath, worldName, version));
+  }
+
+  public CompletableFuture<WorldSyncResult> pinWorld(NetworkServerInfo server, String worldName, int version) {
+    return this.submit(server.getName(), () -> this.network.pinWorld(server, worldName, version));
+  }
+
+  public CompletableFuture<List<String>> getWorldNames(ServerType type, String task) {
+    return CompletableFuture.supplyAsync(() -> this.network.getWorldNames(type, task), this.executor);
+  }
+
+  public CompletableFuture<List<File>> getWorldFiles(ServerType type, String task) {
+    return CompletableFuture.supplyAsync(() -> this.network.getWorldFiles(type, task), this.executor);
+  }
+
+  public CompletableFuture<ServerInitResult> createPublicSave(ServerType type, String task, String name) {
+    return this.submit(saveKey(Network.PUBLIC_DIRECTORY, type, task, name),
+        () -> this.network.createPublicSave(type, task, name));
+  }
+
+  public CompletableFuture<ServerInitResult> createPrivateSave(UUID uuid, ServerType type, String task, String name) {
+    return this.submit(saveKey(uuid.toString(), type, task, name),
+        () -> this.network.createPrivateSave(uuid, type, task, name));
+  }
+
+  public CompletableFuture<List<String>> getPublicSaveNames(ServerType type, String task) {
+    return CompletableFuture.supplyAsync(() -> this.network.getPublicSaveNames(type, task), this.executor);
+  }
+
+  public CompletableFuture<List<String>> getPrivateSaveNames(UUID uuid, ServerType type, String task) {
+    return CompletableFuture.supplyAsync(() -> this.network.getPrivateSaveNames(uuid, type, task), this.executor);
+  }
+
+  public CompletableFuture<Map<UUID, List<String>>> getMemberSaveNames(UUID member, ServerType type, String task) {
+    return CompletableFuture.supplyAsync(() -> this.network.getMemberSaveNames(member, type, task), this.executor);
+  }
+
+  public CompletableFuture<List<UUID>> getPrivateSaveMembers(UUID uuid, ServerType type, String task, String name) {
+    return this.submit(saveKey(uuid.toString(), type, task, name),
+        () -> this.network.getPrivateSaveMembers(uuid, type, task, name));
+  }
+
+  public CompletableFuture<Boolean> setPrivateSaveMembers(UUID uuid, ServerType type, String task, String name,
+                                                          List<UUID> memberUuids) {
+    return this.submit(saveKey(uuid.toString(), type, task, name),
+        () -> this.network.setPrivateSaveMembers(uuid, type, task, name, memberUuids));
+  }
+
+  private static String saveKey(String owner, ServerType type, String task, String name) {
+    return "save/" + type.getShortName() + "/" + task + "/" + owner + "/" + name;
+  }
+
+  private static String worldKey(Path exportPath, String worldName) {
+    return "world/" + exportPath.resolve(worldName);
+  }
+
+  private <T> CompletableFuture<T> submit(String key, Supplier<T> task) {
+    return this.submit(List.of(key), task);
+  }
+
+  /**
+   * Runs the task after all previously submitted tasks with one of the keys, regardless of their
+   * outcome.
+   */
+  private <T> CompletableFuture<T> submit(List<String> keys, Supplier<T> task) {
+    CompletableFuture<T> future = new CompletableFuture<>();
+    Set<String> uniqueKeys = new LinkedHashSet<>(keys);
+
+    List<CompletableFuture<?>> previous = new ArrayList<>();
+    synchronized (this.tailByKey) {
+      for (String key : uniqueKeys) {
+        CompletableFuture<?> tail = this.tailByKey.put(key, future);
+        if (tail != null && tail != future) {
+          previous.add(tail);
+        }
+      }
+    }
+    CompletableFuture<?> start = CompletableFuture.allOf(previous.toArray(CompletableFuture[]::new));
+
+    start.handleAsync((result, throwable) -> {
+      try {
+        future.complete(task.get());
+      } catch (Throwable t) {
+        future.completeExceptionally(t);
+      }
+      return null;
+    }, this.executor).exceptionally(rejected -> {
+      future.completeExceptionally(rejected);
+      return null;
+    });
+
+    future.whenComplete((result, throwable) -> {
+      synchronized (this.tailByKey) {
+        uniqueKeys.forEach(key -> this.tailByKey.remove(key, future));
+      }
+    });
+    return future;
+  }
+
+  @Override
+  public void close() {
+    if (this.ownsExecutor && this.executor instanceof ExecutorService executorService) {
+      executorService.close();
+    }
+  }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2023 timesnake
+ */
+
+package de.timesnake.library.network;
+
+import de.timesnake.library.basic.util.ServerType;
+import freemarker.cache.ClassTemplateLoader;
+import freemarker.cache.FileTemplateLoader;
+import freemarker.cache.MultiTemplateLoader;
+import freemarker.cache.TemplateLoader;
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+import freemarker.template.TemplateExceptionHandler;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Predicate;
+
+/**
+ * Config files generated into every server directory. Each entry maps a FreeMarker template to a
+ * path relative to the server directory. Templates are looked up in the added template directories
+ * first, then in the bundled {@code /templates} resources.
+ */
+public class ConfigTemplateRegistry {
+
+  public static ConfigTemplateRegistry createDefault() {
+    ConfigTemplateRegistry registry = new ConfigTemplateRegistry();
+    try {
+      registry.register("server.properties.ftl", Path.of("server.properties"));
+      registry.register("paper-global.yml.ftl", Path.of("config", "paper-global.yml"));
+      registry.register("spigot.yml.ftl", Path.of("spigot.yml"));
+      registry.register("bukkit.yml.ftl", Path.of("bukkit.yml"));
+      registry.register("channel_config.toml.ftl", Path.of("plugins", "channel", "config.toml"));
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to load config templates", e);
+    }
+    return registry;
+  }
+
+  public static Predicate<NetworkServer> forTypes(ServerType... types) {
+    Set<String> shortNames = new HashSet<>();
+    for (ServerType type : types) {
+      shortNames.add(type.getShortName());
+    }
+    return server -> shortNames.contains(server.getType().getShortName());
+  }
+
+  private final Configuration cfg;
+  private final List<TemplateLoader> directoryLoaders = new ArrayList<>();
+  private final List<ConfigTemplate> templates = new CopyOnWriteArrayList<>();
+  private final ExecutorService executor;
+
+  public ConfigTemplateRegistry() {
+    this(Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("config-render-", 0).factory()));
+  }
+
+  /**
+   * @param executor executor to render the templates of a server on
+   */
+  public ConfigTemplateRegistry(ExecutorService executor) {
+    this.executor = executor;
+    this.cfg = new Configuration(Configuration.VERSION_2_3_29);
+    this.cfg.setClassForTemplateLoading(this.getClass(), "/templates");
+    this.cfg.setDefaultEncoding("UTF-8");
+    this.cfg.setTemplateExceptionHandler(TemplateExceptionHandler.RETHROW_HANDLER);
+    this.cfg.setLogTemplateExceptions(false);
+    this.cfg.setWrapUncheckedExceptions(true);
+    this.cfg.setFallbackOnNullLoopVariable(false);
+    this.cfg.setNumberFormat("0.######");
+  }
+
+  /**
+   * Adds a directory to look up templates in, before all previously added directories. Only affects
+   * templates registered afterwards.
+   */
+  public synchronized ConfigTemplateRegistry addTemplateDirectory(Path directory) throws IOException {
+    this.directoryLoaders.addFirst(new FileTemplateLoader(directory.toFile()));
+
+    List<TemplateLoader> loaders = new ArrayList<>(this.directoryLoaders);
+    loaders.add(new ClassTemplateLoader(this.getClass(), "/templates"));
+    this.cfg.setTemplateLoader(new MultiTemplateLoader(loaders.toArray(TemplateLoader[]::new)));
+    return this;
+  }
+
+  public ConfigTemplateRegistry register(String templateName, Path destination) throws IOException {
+    return this.register(templateName, destination, server -> true);
+  }
+
+  /**
+   * Registers a template, replacing any template with the same destination.
+   *
+   * @param condition the config is only generated for servers matching the condition
+   */
+  public synchronized ConfigTemplateRegistry register(String templateName, Path destination,
+                                                      Predicate<NetworkServer> condition) throws IOException {
+    Template template = this.cfg.getTemplate(templateName);
+    this.templates.removeIf(t -> t.destination().equals(destination));
+    this.templates.add(new ConfigTemplate(template, destination, condition));
+    return this;
+  }
+
+  public synchronized boolean unregister(Path destination) {
+    return this.templates.removeIf(t -> t.destination().equals(destination));
+  }
+
+  public List<ConfigTemplate> getTemplates() {
+    return List.copyOf(this.templates);
+  }
+
+  /**
+   * Renders all templates matching the server in parallel. Parent directories are created once
+   * before rendering.
+   */
+  public void render(NetworkServer server, Path serverPath) throws IOException, TemplateException {
+    Map<String, Object> root = Map.of("server", server);
+
+    List<ConfigTemplate> templates = new ArrayList<>();
+    Set<Path> directories = new HashSet<>();
+    for (ConfigTemplate configTemplate : this.templates) {
+      if (configTemplate.condition().test(server)) {
+        templates.add(configTemplate);
+        Path parent = configTemplate.destination().getParent();
+        if (parent != null) {
+          directories.add(parent);
+        }
+      }
+    }
+
+    Files.createDirectories(serverPath);
+    for (Path directory : directories) {
+      Files.createDirectories(serverPath.resolve(directory.toString()));
+    }
+
+    if (templates.size() == 1) {
+      templates.getFirst().render(root, serverPath.resolve(templates.getFirst().destination().toString()));
+      return;
+    }
+
+    List<Future<?>> futures = new ArrayList<>(templates.size());
+    for (ConfigTemplate configTemplate : templates) {
+      futures.add(this.executor.submit(() -> {
+        configTemplate.render(root, serverPath.resolve(configTemplate.destination().toString()));
+        return null;
+      }));
+    }
+
+    Throwable failure = null;
+    for (Future<?> future : futures) {
+      try {
+        future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        futures.forEach(f -> f.cancel(true));
+        throw new InterruptedIOException("config generation interrupted");
+      } catch (ExecutionException e) {
+        if (failure == null) {
+          failure = e.getCause();
+        }
+      }
+    }
+
+    if (failure instanceof IOException ioException) {
+      throw ioException;
+    } else if (failure instanceof TemplateException templateException) {
+      throw templateException;
+    } else if (failure instanceof RuntimeException runtimeException) {
+      throw runtimeException;
+    } else if (failure != null) {
+      throw new IOException(failure);
+    }
+  }
+
+  /**
+   * @param destination path relative to the server directory, its parent directory must exist when
+   *                    rendering
+   */
+  public record ConfigTemplate(Template template, Path destination, Predicate<NetworkServer> condition) {
+
+    public void render(Object root, Path dest) throws IOException, TemplateException {
+      StringWriter writer = new StringWriter();
+      this.template.process(root, writer);
+      byte[] content = writer.toString().getBytes(StandardCharsets.UTF_8);
+
+      if (Files.isRegularFile(dest) && Files.size(dest) == content.length
+          && Arrays.equals(Files.readAllBytes(dest), content)) {
+        return;
+      }
+
+      Files.write(dest, content);
+    }
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2023 timesnake
+ */
+
+package de.timesnake.library.network;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Watches registered directories on a daemon thread. The listener receives the changed entry of a
+ * watched directory, or null if events were lost.
+ */
+public class DirectoryWatcher implements Closeable {
+
+  private final Logger logger = LogManager.getLogger("network-utils");
+
+  private final WatchService watchService;
+  private final Map<Path, WatchKey> keyByDirectory = new ConcurrentHashMap<>();
+  private final Consumer<Path> onChange;
+  private final Thread thread;
+
+  public DirectoryWatcher(String name, Consumer<Path> onChange) throws IOException {
+    this.watchService = FileSystems.getDefault().newWatchService();
+    this.onChange = onChange;
+    this.thread = Thread.ofPlatform().name(name).daemon().start(this::run);
+  }
+
+  public void register(Path directory) {
+    this.keyByDirectory.computeIfAbsent(directory.toAbsolutePath(), dir -> {
+      try {
+        return dir.register(this.watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+      } catch (IOException e) {
+        this.logger.warn("Failed to watch directory {}: {}", dir, e.getMessage());
+        return null;
+      }
+    });
+  }
+
+  private void run() {
+    while (true) {
+      WatchKey key;
+      try {
+        key = this.watchService.take();
+      } catch (InterruptedException | ClosedWatchServiceException e) {
+        return;
+      }
+
+      Path directory = (Path) key.watchable();
+      for (WatchEvent<?> event : key.pollEvents()) {
+        if (event.kind() == OVERFLOW) {
+          this.onChange.accept(null);
+        } else {
+          this.onChange.accept(directory.resolve((Path) event.context()));
+        }
+      }
+
+      if (!key.reset()) {
+        this.keyByDirectory.values().remove(key);
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.thread.interrupt();
+    this.watchService.close();
+  }
+}
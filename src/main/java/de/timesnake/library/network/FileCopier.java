@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2023 timesnake
+ */
+
+package de.timesnake.library.network;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Copies files on a bounded number of virtual threads. Directory trees are walked once, files are
+ * transferred with {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}.
+ * <p>
+ * The bound applies to all concurrent copies of a copier and the copiers derived from it, so copies
+ * running in parallel, e.g. of servers created together, do not multiply it.
+ */
+public class FileCopier {
+
+  public static final int DEFAULT_PARALLELISM = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+  public static void copyFile(Path src, Path dest) throws IOException {
+    Files.deleteIfExists(dest);
+    try (FileChannel in = FileChannel.open(src, StandardOpenOption.READ);
+         FileChannel out = FileChannel.open(dest, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+      long size = in.size();
+      long position = 0;
+      while (position < size) {
+        long transferred = in.transferTo(position, size - position, out);
+        if (transferred <= 0) {
+          break;
+        }
+        position += transferred;
+      }
+
+      if (position < size) {
+        throw new IOException("Failed to copy '" + src + "' to '" + dest + "': copied " + position + " of "
+            + size + " bytes");
+      }
+    }
+    Files.setLastModifiedTime(dest, Files.getLastModifiedTime(src));
+    copyPermissions(src, dest);
+  }
+
+  /**
+   * Copies the POSIX permissions, e.g. the executable bit of start scripts. Does nothing on file
+   * systems without POSIX permissions.
+   */
+  static void copyPermissions(Path src, Path dest) throws IOException {
+    if (dest.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+      Files.setPosixFilePermissions(dest, Files.getPosixFilePermissions(src));
+    }
+  }
+
+  private final int parallelism;
+  private final ProgressListener progressListener;
+  private final TemplateFileCache fileCache;
+  private final Semaphore permits;
+
+  public FileCopier() {
+    this(DEFAULT_PARALLELISM);
+  }
+
+  public FileCopier(int parallelism) {
+    this(parallelism, null);
+  }
+
+  public FileCopier(int parallelism, ProgressListener progressListener) {
+    this(parallelism, progressListener, null);
+  }
+
+  /**
+   * @param fileCache cache to read small files from instead of the file system, may be null
+   */
+  public FileCopier(int parallelism, ProgressListener progressListener, TemplateFileCache fileCache) {
+    this(parallelism, progressListener, fileCache, new Semaphore(Math.max(parallelism, 1)));
+  }
+
+  private FileCopier(int parallelism, ProgressListener progressListener, TemplateFileCache fileCache,
+                     Semaphore permits) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism must be at least 1");
+    }
+    this.parallelism = parallelism;
+    this.progressListener = progressListener;
+    this.fileCache = fileCache;
+    this.permits = permits;
+  }
+
+  public int getParallelism() {
+    return parallelism;
+  }
+
+  public FileCopier withFileCache(TemplateFileCache fileCache) {
+    return new FileCopier(this.parallelism, this.progressListener, fileCache, this.permits);
+  }
+
+  public Result copyDirectory(Path src, Path dest) throws IOException {
+    return this.copyDirectory(src, dest, null);
+  }
+
+  /**
+   * @param filter files to copy, null for all
+   */
+  public Result copyDirectory(Path src, Path dest, Predicate<Path> filter) throws IOException {
+    if (!Files.isDirectory(src)) {
+      throw new NoSuchFileException(src.toString(), null, "source directory does not exist");
+    }
+
+    List<Transfer> transfers = new ArrayList<>();
+
+    Files.walkFileTree(src, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<>() {
+      @Override
+      public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+        Files.createDirectories(dest.resolve(src.relativize(dir).toString()));
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+        if (filter != null && !filter.test(file)) {
+          return FileVisitResult.CONTINUE;
+        }
+        transfers.add(new Transfer(file, dest.resolve(src.relativize(file).toString()), attrs.size(), false));
+        return FileVisitResult.CONTINUE;
+      }
+    });
+
+    return this.copyFiles(transfers);
+  }
+
+  /**
+   * Executes all transfers in parallel. Target directories must already exist.
+   */
+  public Result copyFiles(List<Transfer> transfers) throws IOException {
+    long totalBytes = transfers.stream().mapToLong(Transfer::size).sum();
+    AtomicInteger copiedFiles = new AtomicInteger();
+    AtomicLong copiedBytes = new AtomicLong();
+
+    NetworkFileUtils.forEachParallel(transfers, this.parallelism, transfer -> {
+      try {
+        this.permits.acquire();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("interrupted");
+      }
+
+      try {
+        if (transfer.link() && NetworkFileUtils.isImmutableFile(transfer.source())) {
+          NetworkFileUtils.linkOrCopyFile(transfer.source(), transfer.target());
+        } else {
+          this.copyFile(transfer);
+        }
+      } finally {
+        this.permits.release();
+      }
+
+      int files = copiedFiles.incrementAndGet();
+      long bytes = copiedBytes.addAndGet(transfer.size());
+      if (this.progressListener != null) {
+        this.progressListener.onProgress(transfer.target(), files, transfers.size(), bytes, totalBytes);
+      }
+    });
+
+    return new Result(copiedFiles.get(), copiedBytes.get());
+  }
+
+  private void copyFile(Transfer transfer) throws IOException {
+    if (this.fileCache == null || !this.fileCache.copy(transfer.source(), transfer.target())) {
+      copyFile(transfer.source(), transfer.target());
+    }
+  }
+
+  @FunctionalInterface
+  public interface ProgressListener {
+
+    void onProgress(Path file, int copiedFiles, int totalFiles, long copiedBytes, long totalBytes);
+  }
+
+  /**
+   * @param link hardlink immutable files instead of copying them, see
+   *             {@link NetworkFileUtils#linkOrCopyFile(Path, Path)}
+   */
+  public record Transfer(Path source, Path target, long size, boolean link) {
+
+  }
+
+  public record Result(int files, long bytes) {
+
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2023 timesnake
+ */
+
+package de.timesnake.library.network;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Directory of one instance below a directory shared by all processes using the network path. The
+ * instance holds a lock on its lock file while open. Directories of instances without lock, e.g. of a
+ * crashed process, are swept when a new instance is created.
+ */
+public class InstanceDirectory implements Closeable {
+
+  public static final String LOCK_FILE_EXTENSION = ".lock";
+
+  private static final String TMP_PREFIX = ".tmp-";
+  private static final AtomicLong COUNTER = new AtomicLong();
+
+  private static final Logger LOGGER = LogManager.getLogger("network-utils");
+
+  /**
+   * Creates the directory of a new instance and sweeps the directories of dead instances.
+   *
+   * @param sweeper receives the directories of dead instances to delete them
+   */
+  public static InstanceDirectory create(Path parent, Consumer<Path> sweeper) throws IOException {
+    Files.createDirectories(parent);
+    String name = ProcessHandle.current().pid() + "-" + System.currentTimeMillis() + "-" + COUNTER.incrementAndGet();
+
+    // locked before it becomes visible, a sweeper must not see it unlocked
+    Path tmpLockFile = parent.resolve(TMP_PREFIX + name + LOCK_FILE_EXTENSION);
+    Path lockFile = parent.resolve(name + LOCK_FILE_EXTENSION);
+    FileChannel channel = FileChannel.open(tmpLockFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    FileLock lock;
+    try {
+      lock = channel.lock();
+      Files.move(tmpLockFile, lockFile, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      channel.close();
+      Files.deleteIfExists(tmpLockFile);
+      throw e;
+    }
+
+    Path path = parent.resolve(name);
+    Files.createDirectories(path);
+
+    InstanceDirectory directory = new InstanceDirectory(path, lockFile, channel, lock);
+    sweep(parent, name, sweeper);
+    return directory;
+  }
+
+  private static void sweep(Path parent, String ownName, Consumer<Path> sweeper) {
+    String[] names = parent.toFile().list();
+    if (names == null) {
+      return;
+    }
+
+    // names of live instances and of swept ones
+    Set<String> handledNames = new HashSet<>();
+    handledNames.add(ownName);
+
+    for (String name : names) {
+      if (!name.endsWith(LOCK_FILE_EXTENSION) || name.startsWith(TMP_PREFIX) || name.equals(ownName + LOCK_FILE_EXTENSION)) {
+        continue;
+      }
+
+      String instanceName = name.substring(0, name.length() - LOCK_FILE_EXTENSION.length());
+      Path lockFile = parent.resolve(name);
+      try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.WRITE)) {
+        FileLock lock = channel.tryLock();
+        if (lock == null) {
+          handledNames.add(instanceName);
+          continue;
+        }
+
+        try {
+          if (Files.exists(parent.resolve(instanceName))) {
+            sweeper.accept(parent.resolve(instanceName));
+          }
+          Files.deleteIfExists(lockFile);
+          handledNames.add(instanceName);
+        } finally {
+          lock.release();
+        }
+      } catch (OverlappingFileLockException e) {
+        // held by another instance of this process
+        handledNames.add(instanceName);
+      } catch (IOException e) {
+        LOGGER.warn("Failed to check instance lock {}: {}", lockFile, e.getMessage());
+        handledNames.add(instanceName);
+      }
+    }
+
+    // directories without lock file, e.g. of an older layout
+    for (String name : names) {
+      Path path = parent.resolve(name);
+      if (!name.endsWith(LOCK_FILE_EXTENSION) && !handledNames.contains(name) && Files.isDirectory(path)
+          && !Files.exists(parent.resolve(name + LOCK_FILE_EXTENSION))) {
+        sweeper.accept(path);
+      }
+    }
+  }
+
+  private final Path path;
+  private final Path lockFile;
+  private final FileChannel channel;
+  private final FileLock lock;
+
+  private InstanceDirectory(Path path, Path lockFile, FileChannel channel, FileLock lock) {
+    this.path = path;
+    this.lockFile = lockFile;
+    this.channel = channel;
+    this.lock = lock;
+  }
+
+  public Path getPath() {
+    return path;
+  }
+
+  /**
+   * Releases the lock, a remaining directory is swept by the next instance.
+   */
+  @Override
+  public void close() throws IOException {
+    Files.deleteIfExists(this.lockFile);
+    this.lock.release();
+    this.channel.close();
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2023 timesnake
+ */
+
+package de.timesnake.library.network;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aggregates metrics in memory, exposes them as MXBean and logs operations slower than the given
+ * threshold with their phase durations.
+ */
+public class JmxNetworkMetrics implements NetworkMetrics, NetworkMetricsMXBean {
+
+  public static final String OBJECT_NAME = "de.timesnake.library.network:type=NetworkMetrics";
+
+  private final Logger logger = LogManager.getLogger("network-utils");
+
+  private final Duration slowThreshold;
+
+  private final Map<String, LongAdder> countByKey = new ConcurrentHashMap<>();
+  private final Map<String, LongAdder> millisByKey = new ConcurrentHashMap<>();
+  private final Map<String, LongAdder> failuresByReason = new ConcurrentHashMap<>();
+  private final Map<String, LongAdder> cacheHits = new ConcurrentHashMap<>();
+  private final Map<String, LongAdder> cacheMisses = new ConcurrentHashMap<>();
+  private final LongAdder filesCopied = new LongAdder();
+  private final LongAdder bytesCopied = new LongAdder();
+
+  public JmxNetworkMetrics(Duration slowThreshold) {
+    this.slowThreshold = slowThreshold;
+  }
+
+  /**
+   * Registers this instance at the platform MBean server.
+   */
+  public JmxNetworkMetrics register() throws JMException {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName(OBJECT_NAME);
+    if (server.isRegistered(name)) {
+      server.unregisterMBean(name);
+    }
+    server.registerMBean(this, name);
+    return this;
+  }
+
+  @Override
+  public void recordPhase(String operation, Phase phase, Duration duration) {
+    this.add(this.countByKey, operation + "." + phase.name().toLowerCase(), 1);
+    this.add(this.millisByKey, operation + "." + phase.name().toLowerCase(), duration.toMillis());
+  }
+
+  @Override
+  public void recordOperation(String operation, Duration duration, boolean successful) {
+    this.recordOperation(operation, duration, successful, Map.of());
+  }
+
+  @Override
+  public void recordOperation(String operation, Duration duration, boolean successful, Map<Phase, Duration> phases) {
+    this.add(this.countByKey, operation, 1);
+    this.add(this.millisByKey, operation, duration.toMillis());
+
+    if (duration.compareTo(this.slowThreshold) >= 0) {
+      StringBuilder phaseLog = new StringBuilder();
+      phases.forEach((phase, phaseDuration) -> phaseLog.append(' ').append(phase.name().toLowerCase()).append('=')
+          .append(phaseDuration.toMillis()).append("ms"));
+      this.logger.info("Slow network operation {} ({}): {}ms,{}", operation, successful ? "successful" : "failed",
+          duration.toMillis(), phaseLog);
+    }
+  }
+
+  @Override
+  public void recordFailure(String operation, String reason) {
+    this.add(this.failuresByReason, operation + ": " + reason, 1);
+  }
+
+  @Override
+  public void recordCopy(int files, long bytes) {
+    this.filesCopied.add(files);
+    this.bytesCopied.add(bytes);
+  }
+
+  @Override
+  public void recordCacheAccess(String cache, boolean hit) {
+    this.add(hit ? this.cacheHits : this.cacheMisses, cache, 1);
+  }
+
+  @Override
+  public Map<String, Long> getCounts() {
+    return snapshot(this.countByKey);
+  }
+
+  @Override
+  public Map<String, Long> getTotalMillis() {
+    return snapshot(this.millisByKey);
+  }
+
+  @Override
+  public Map<String, Long> getFailures() {
+    return snapshot(this.failuresByReason);
+  }
+
+  @Override
+  public Map<String, Long> getCacheHits() {
+    return snapshot(this.cacheHits);
+  }
+
+  @Override
+  public Map<String, Long> getCacheMisses() {
+    return snapshot(this.cacheMisses);
+  }
+
+  @Override
+  public long getFilesCopied() {
+    return this.filesCopied.sum();
+  }
+
+  @Override
+  public long getBytesCopied() {
+    return this.bytesCopied.sum();
+  }
+
+  private void add(Map<String, LongAdder> map, String key, long value) {
+    map.computeIfAbsent(key, k -> new LongAdder()).add(value);
+  }
+
+  private static Map<String, Long> snapshot(Map<String, LongAdder> map) {
+    Map<String, Long> snapshot = new TreeMap<>();
+    map.forEach((key, value) -> snapshot.put(key, value.sum()));
+    return snapshot;
+  }
+}
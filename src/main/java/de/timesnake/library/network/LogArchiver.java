@@ -0,0 +1,350 @@
+/*
+ * Copyright (C) 2023 timesnake
+ */
+
+package de.timesnake.library.network;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.*;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static de.timesnake.library.network.Network.DATE_FORMAT;
+
+/**
+ * Archives the log directories created by {@link Network#syncLogs(NetworkServerInfo)}. Finished log
+ * directories ({@code logs/<type>/<task>/<name>/<date>}) are packed into one archive per day next to
+ * the server directories ({@code logs/<type>/<task>/<day>.zip}) and deleted, empty server directories
+ * are removed. Archives exceeding the maximum age or total size are deleted, oldest first.
+ * <p>
+ * A log directory is finished if nothing was written to it within the idle time, older directories of
+ * a server already after a few minutes. Each archive is opened once per run and locked against other
+ * processes archiving the same logs. With {@link #start(Duration)} the logs are archived periodically
+ * on a low priority background thread.
+ */
+public class LogArchiver {
+
+  public static final String FILE_EXTENSION = ".zip";
+  public static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.ISO_LOCAL_DATE;
+  public static final String LOCK_FILE_EXTENSION = ".lock";
+
+  /**
+   * Time without writes after which an older log directory of a server is finished, at most the idle
+   * time.
+   */
+  private static final Duration FINISHED_IDLE_TIME = Duration.ofMinutes(10);
+
+  private final Logger logger = LogManager.getLogger("network-utils");
+
+  private final Path logsPath;
+
+  private Duration idleTime = Duration.ofDays(1);
+  private Duration maxAge = null;
+  private long maxSize = -1;
+
+  private ScheduledExecutorService executor;
+
+  public LogArchiver(Path logsPath) {
+    this.logsPath = logsPath;
+  }
+
+  /**
+   * @param idleTime time without writes after which the newest log directory of a server is finished
+   */
+  public LogArchiver setIdleTime(Duration idleTime) {
+    this.idleTime = idleTime;
+    return this;
+  }
+
+  /**
+   * @param maxAge age of archives to delete, null to keep them
+   */
+  public LogArchiver setMaxAge(Duration maxAge) {
+    this.maxAge = maxAge;
+    return this;
+  }
+
+  /**
+   * @param maxSize total size in bytes of all archives, negative for no limit
+   */
+  public LogArchiver setMaxSize(long maxSize) {
+    this.maxSize = maxSize;
+    return this;
+  }
+
+  /**
+   * Archives the logs every interval in the background, replacing a previous schedule.
+   */
+  public synchronized void start(Duration interval) {
+    this.stop();
+    this.executor = Executors.newSingleThreadScheduledExecutor(
+        Thread.ofPlatform().name("log-archiver").daemon().priority(Thread.MIN_PRIORITY).factory());
+    this.executor.scheduleWithFixedDelay(() -> {
+      try {
+        Result result = this.archive();
+        if (result.archivedDirectories() > 0 || result.deletedArchives() > 0) {
+          this.logger.info("Archived {} log directories, deleted {} log archives", result.archivedDirectories(),
+              result.deletedArchives());
+        }
+      } catch (IOException | RuntimeException e) {
+        this.logger.warn("Failed to archive logs: {}", e.getMessage());
+      }
+    }, 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  public synchronized void stop() {
+    if (this.executor != null) {
+      this.executor.shutdownNow();
+      this.executor = null;
+    }
+  }
+
+  /**
+   * Archives all finished log directories and applies the retention.
+   */
+  public synchronized Result archive() throws IOException {
+    if (!Files.isDirectory(this.logsPath)) {
+      return new Result(0, 0);
+    }
+
+    Map<Path, List<Path>> logDirsByServerDir = new HashMap<>();
+    List<Path> archives = new ArrayList<>();
+
+    Files.walkFileTree(this.logsPath, new SimpleFileVisitor<>() {
+      @Override
+      public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+        if (!dir.equals(logsPath) && parseDate(dir.getFileName().toString()) != null) {
+          logDirsByServerDir.computeIfAbsent(dir.getParent(), d -> new ArrayList<>()).add(dir);
+          return FileVisitResult.SKIP_SUBTREE;
+        }
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+        if (attrs.isRegularFile() && parseDay(file.getFileName().toString()) != null) {
+          archives.add(file);
+        }
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFileFailed(Path file, IOException exc) {
+        return FileVisitResult.CONTINUE;
+      }
+    });
+
+    Instant idleSince = Instant.now().minus(this.idleTime);
+    Instant finishedSince = Instant.now().minus(this.idleTime.compareTo(FINISHED_IDLE_TIME) < 0 ? this.idleTime
+        : FINISHED_IDLE_TIME);
+    Map<Path, List<Path>> logDirsByArchive = new LinkedHashMap<>();
+
+    for (Map.Entry<Path, List<Path>> entry : logDirsByServerDir.entrySet()) {
+      Path serverDir = entry.getKey();
+      List<Path> logDirs = entry.getValue();
+      logDirs.sort(Comparator.comparing(dir -> parseDate(dir.getFileName().toString())));
+
+      for (int i = 0; i < logDirs.size(); i++) {
+        Path logDir = logDirs.get(i);
+        // older directories may still be written by a server shutting down
+        Instant since = i == logDirs.size() - 1 ? idleSince : finishedSince;
+        if (lastModified(logDir).toInstant().isAfter(since)) {
+          continue;
+        }
+
+        LocalDate day = parseDate(logDir.getFileName().toString()).toLocalDate();
+        Path archive = serverDir.resolveSibling(DAY_FORMAT.format(day) + FILE_EXTENSION);
+        logDirsByArchive.computeIfAbsent(archive, a -> new ArrayList<>()).add(logDir);
+      }
+    }
+
+    int archived = 0;
+    for (Map.Entry<Path, List<Path>> entry : logDirsByArchive.entrySet()) {
+      Path archive = entry.getKey();
+      archived += this.pack(entry.getValue(), archive);
+      if (Files.exists(archive) && !archives.contains(archive)) {
+        archives.add(archive);
+      }
+    }
+
+    for (Path serverDir : logDirsByServerDir.keySet()) {
+      String[] names = serverDir.toFile().list();
+      if (names != null && names.length == 0) {
+        try {
+          Files.deleteIfExists(serverDir);
+        } catch (DirectoryNotEmptyException ignored) {
+          // new logs written by a starting server
+        }
+      }
+    }
+
+    return new Result(archived, this.applyRetention(archives));
+  }
+
+  /**
+   * Packs the log directories into the archive, opened once, and deletes them. The archive is locked
+   * against other processes, a locked archive is skipped.
+   *
+   * @return the number of archived directories
+   */
+  private int pack(List<Path> logDirs, Path archive) {
+    Path lockFile = archive.resolveSibling(archive.getFileName() + LOCK_FILE_EXTENSION);
+    try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+         FileLock lock = channel.tryLock()) {
+      if (lock == null) {
+        return 0;
+      }
+
+      Map<Path, FileTime> lastModifiedByLogDir = new LinkedHashMap<>();
+      for (Path logDir : logDirs) {
+        lastModifiedByLogDir.put(logDir, lastModified(logDir));
+      }
+
+      URI uri = URI.create("jar:" + archive.toAbsolutePath().toUri());
+      try (FileSystem zip = FileSystems.newFileSystem(uri, Map.of("create", "true"))) {
+        for (Path logDir : logDirs) {
+          this.pack(logDir, zip.getPath("/" + logDir.getParent().getFileName() + "/" + logDir.getFileName()));
+        }
+      }
+
+      int archived = 0;
+      for (Map.Entry<Path, FileTime> entry : lastModifiedByLogDir.entrySet()) {
+        Path logDir = entry.getKey();
+        // written while packing, packed again next time
+        if (!lastModified(logDir).equals(entry.getValue())) {
+          continue;
+        }
+        NetworkFileUtils.deleteRecursively(logDir);
+        archived++;
+      }
+      return archived;
+    } catch (OverlappingFileLockException e) {
+      // archived by another instance of this process
+      return 0;
+    } catch (IOException e) {
+      this.logger.warn("Failed to archive log directories into {}: {}", archive, e.getMessage());
+      return 0;
+    }
+  }
+
+  private void pack(Path logDir, Path root) throws IOException {
+    Files.walkFileTree(logDir, new SimpleFileVisitor<>() {
+      @Override
+      public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+        Files.createDirectories(root.resolve(logDir.relativize(dir).toString()));
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+        Files.copy(file, root.resolve(logDir.relativize(file).toString()), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.COPY_ATTRIBUTES);
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  /**
+   * @return the number of deleted archives
+   */
+  private int applyRetention(List<Path> archives) {
+    archives.sort(Comparator.comparing((Path archive) -> parseDay(archive.getFileName().toString())).reversed());
+
+    LocalDate minDay = this.maxAge != null ? LocalDate.now().minusDays(this.maxAge.toDays()) : null;
+    long size = 0;
+    int deleted = 0;
+
+    for (Path archive : archives) {
+      try {
+        long archiveSize = Files.size(archive);
+        boolean expired = minDay != null && parseDay(archive.getFileName().toString()).isBefore(minDay);
+        if ((expired || this.maxSize >= 0 && size + archiveSize > this.maxSize) && this.delete(archive)) {
+          deleted++;
+        } else {
+          size += archiveSize;
+        }
+      } catch (IOException e) {
+        this.logger.warn("Failed to delete log archive {}: {}", archive, e.getMessage());
+      }
+    }
+    return deleted;
+  }
+
+  /**
+   * Deletes the archive and its lock file, holding the lock like {@link #pack(List, Path)}.
+   *
+   * @return false if the archive is locked by another process
+   */
+  private boolean delete(Path archive) throws IOException {
+    Path lockFile = archive.resolveSibling(archive.getFileName() + LOCK_FILE_EXTENSION);
+    try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+         FileLock lock = channel.tryLock()) {
+      if (lock == null) {
+        return false;
+      }
+
+      Files.delete(archive);
+      Files.delete(lockFile);
+      return true;
+    } catch (OverlappingFileLockException e) {
+      // packed by another instance of this process
+      return false;
+    }
+  }
+
+  private static FileTime lastModified(Path dir) throws IOException {
+    FileTime[] lastModified = {Files.getLastModifiedTime(dir)};
+    Files.walkFileTree(dir, new SimpleFileVisitor<>() {
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+        if (attrs.lastModifiedTime().compareTo(lastModified[0]) > 0) {
+          lastModified[0] = attrs.lastModifiedTime();
+        }
+        return FileVisitResult.CONTINUE;
+      }
+    });
+    return lastModified[0];
+  }
+
+  private static LocalDateTime parseDate(String name) {
+    try {
+      return LocalDateTime.parse(name, DATE_FORMAT);
+    } catch (DateTimeParseException e) {
+      return null;
+    }
+  }
+
+  private static LocalDate parseDay(String fileName) {
+    if (!fileName.endsWith(FILE_EXTENSION)) {
+      return null;
+    }
+
+    try {
+      return LocalDate.parse(fileName.substring(0, fileName.length() - FILE_EXTENSION.length()), DAY_FORMAT);
+    } catch (DateTimeParseException e) {
+      return null;
+    }
+  }
+
+  /**
+   * @param archivedDirectories log directories packed into archives
+   * @param deletedArchives     archives deleted by the retention
+   */
+  public record Result(int archivedDirectories, int deletedArchives) {
+
+  }
+}
@@ -10,7 +10,7 @@ import freemarker.template.TemplateException;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
-import java.text.SimpleDateFormat;
+import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -24,20 +24,54 @@ public interface Network {
   String TEMPLATE_DIR_NAME = "templates";
   String SERVERS_TEMPLATE_NAME = "servers";
   String WORLDS_TEMPLATE_NAME = "worlds";
+  String WORLD_ARCHIVES_TEMPLATE_NAME = "world_archives";
   String PLAYERS_TEMPLATE_NAME = "players";
+  String INDEX_DIR_NAME = ".index";
+  String LOCKS_DIR_NAME = "locks";
+  String BLOBS_DIR_NAME = ".blobs";
   String PLAYER_DATA = "playerdata";
   String SERVERS = "servers";
-
-  SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss");
+  /**
+   * Working directories next to the servers, so that the servers directory only contains servers.
+   * Must be on the same file system as the servers directory, directories are moved between them.
+   */
+  String SERVERS_DATA_DIR_NAME = "servers.d";
+  String POOL_DIR_NAME = "pool";
+  String TRASH_DIR_NAME = "trash";
+  String STAGING_DIR_NAME = "staging";
+  String VERSIONS_DIR_NAME = ".versions";
+  String EXPORTS_DIR_NAME = "exports";
+
+  DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss");
 
   String LOGS_DIR_NAME = "logs";
 
   String OWN_SERVER_INFO_FILE_NAME = "own_server_info.toml";
+  String WORLD_BOUNDS_FILE_NAME = "world_bounds.toml";
+  String WORLD_LEVEL_FILE_NAME = "level.dat";
   String OWN_SERVER_OWNER_UUID = "owner_uuid";
   String OWN_SERVER_MEMBER_UUIDS = "member_uuids";
 
   ServerCreationResult createServer(NetworkServer server);
 
+  /**
+   * Creates all servers, provisioning them in parallel. Templates are resolved once per type, task and
+   * copy types.
+   *
+   * @param servers servers with distinct names
+   * @return the result per server name, in the order of the given servers
+   * @throws IllegalArgumentException if two servers have the same name
+   */
+  Map<String, ServerCreationResult> createServers(List<NetworkServer> servers);
+
+  /**
+   * Removes the server directory. The directory is moved out of the way immediately and deleted in
+   * the background, linked templates are left untouched.
+   *
+   * @return false if the directory could not be removed
+   */
+  boolean deleteServer(NetworkServerInfo info);
+
   void generateConfigurations(NetworkServer server) throws IOException, TemplateException;
 
   void copyServerFromTemplate(NetworkServerInfo info) throws IOException;
@@ -52,8 +86,21 @@ public interface Network {
 
   WorldSyncResult syncWorld(NetworkServerInfo server, String worldName);
 
+
   WorldSyncResult exportAndSyncWorld(String serverName, String worldName, Path exportPath);
 
+  /**
+   * Points a versioned world template to an older or newer generation.
+   */
+  WorldSyncResult rollbackWorld(Path exportPath, String worldName, int version);
+
+  /**
+   * Links the world of the server to a generation of the versioned world template instead of the
+   * current one. The generation is shared and must not be saved by the server, it is kept while
+   * linked.
+   */
+  WorldSyncResult pinWorld(NetworkServerInfo server, String worldName, int version);
+
   List<String> getWorldNames(ServerType type, String task);
 
   List<File> getWorldFiles(ServerType type, String task);
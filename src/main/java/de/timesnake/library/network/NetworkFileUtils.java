@@ -7,12 +7,76 @@ package de.timesnake.library.network;
 import de.timesnake.library.basic.util.ServerType;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class NetworkFileUtils {
 
+  public static final Set<String> IMMUTABLE_FILE_EXTENSIONS = Set.of("jar", "zip");
+
+  public static boolean isImmutableFile(Path file) {
+    String name = file.getFileName().toString();
+    int index = name.lastIndexOf('.');
+    return index >= 0 && IMMUTABLE_FILE_EXTENSIONS.contains(name.substring(index + 1).toLowerCase());
+  }
+
+  public static void linkOrCopyFile(Path src, Path dest) throws IOException {
+    if (isImmutableFile(src)) {
+      Files.deleteIfExists(dest);
+      try {
+        Files.createLink(dest, src);
+        return;
+      } catch (UnsupportedOperationException | FileSystemException ignored) {
+        // different file system or no hardlink support, fall back to copy
+      }
+    }
+    Files.copy(src, dest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+  }
+
+  /**
+   * Deletes the file or directory tree. Symlinks are deleted, not followed.
+   */
+  public static void deleteRecursively(Path path) throws IOException {
+    if (!Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+      return;
+    }
+
+    Files.walkFileTree(path, new SimpleFileVisitor<>() {
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+        Files.deleteIfExists(file);
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+        if (exc instanceof NoSuchFileException) {
+          return FileVisitResult.CONTINUE;
+        }
+        throw exc;
+      }
+
+      @Override
+      public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+        if (exc != null && !(exc instanceof NoSuchFileException)) {
+          throw exc;
+        }
+        Files.deleteIfExists(dir);
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
   public static void createSymLinks(Path src, Path dest) throws IOException {
     String[] fileNames = src.toFile().list();
     createSymLinks(src, fileNames != null ? List.of(fileNames) : List.of(), dest);
@@ -55,4 +119,71 @@ public class NetworkFileUtils {
     }
     return path;
   }
+
+  /**
+   * Runs the action for all elements on up to parallelism virtual threads. Stops at the first failure
+   * and rethrows it.
+   */
+  public static <T> void forEachParallel(List<T> elements, int parallelism, IOConsumer<T> action)
+      throws IOException {
+    AtomicInteger nextIndex = new AtomicInteger();
+    AtomicReference<IOException> failure = new AtomicReference<>();
+
+    Runnable worker = () -> {
+      int index;
+      while (failure.get() == null && (index = nextIndex.getAndIncrement()) < elements.size()) {
+        T element = elements.get(index);
+        try {
+          action.accept(element);
+        } catch (IOException e) {
+          failure.compareAndSet(null, e);
+          return;
+        } catch (UncheckedIOException e) {
+          failure.compareAndSet(null, e.getCause());
+          return;
+        } catch (RuntimeException e) {
+          failure.compareAndSet(null, new IOException("failed to process " + element + ": " + e, e));
+          return;
+        }
+      }
+    };
+
+    int workers = Math.min(parallelism, elements.size());
+    if (workers <= 1) {
+      worker.run();
+    } else {
+      try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+        List<Future<?>> futures = new ArrayList<>(workers);
+        for (int i = 0; i < workers; i++) {
+          futures.add(executor.submit(worker));
+        }
+        for (Future<?> future : futures) {
+          try {
+            future.get();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure.compareAndSet(null, new InterruptedIOException("interrupted"));
+          } catch (Exception e) {
+            failure.compareAndSet(null, new IOException(e));
+          }
+        }
+      }
+    }
+
+    if (failure.get() != null) {
+      throw failure.get();
+    }
+  }
+
+  @FunctionalInterface
+  public interface IOConsumer<T> {
+
+    void accept(T t) throws IOException;
+  }
+
+  @FunctionalInterface
+  public interface IOSupplier<T> {
+
+    T get() throws IOException;
+  }
 }
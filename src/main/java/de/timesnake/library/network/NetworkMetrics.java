@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2023 timesnake
+ */
+
+package de.timesnake.library.network;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Instrumentation of {@link Network} operations. All methods default to no-ops and may be called
+ * concurrently.
+ */
+public interface NetworkMetrics {
+
+  NetworkMetrics NO_OP = new NetworkMetrics() {
+  };
+
+  String CREATE_SERVER = "create_server";
+  String LOAD_SAVE = "load_save";
+  String CREATE_SAVE = "create_save";
+  String SYNC_WORLD = "sync_world";
+  String EXPORT_WORLD = "export_world";
+  String PROVISION_POOL = "provision_pool";
+
+  String TEMPLATE_MANIFEST_CACHE = "template_manifest";
+  String TEMPLATE_FILE_CACHE = "template_file";
+  String SERVER_POOL = "server_pool";
+
+  /**
+   * Called once per finished phase of a server creation.
+   */
+  default void recordPhase(String operation, Phase phase, Duration duration) {
+
+  }
+
+  /**
+   * Called once per operation, failed operations additionally call
+   * {@link #recordFailure(String, String)}.
+   */
+  default void recordOperation(String operation, Duration duration, boolean successful) {
+
+  }
+
+  /**
+   * Called instead of {@link #recordOperation(String, Duration, boolean)} for operations measured in
+   * phases.
+   *
+   * @param phases durations of the phases recorded by {@link #recordPhase(String, Phase, Duration)}
+   */
+  default void recordOperation(String operation, Duration duration, boolean successful,
+                               Map<Phase, Duration> phases) {
+    this.recordOperation(operation, duration, successful);
+  }
+
+  default void recordFailure(String operation, String reason) {
+
+  }
+
+  default void recordCopy(int files, long bytes) {
+
+  }
+
+  default void recordCacheAccess(String cache, boolean hit) {
+
+  }
+
+  enum Phase {
+    POOL_TAKE,
+    SERVER_LINK,
+    TEMPLATE_COPY,
+    WORLD_COPY,
+    WORLD_SYNC,
+    CONFIG_GENERATION,
+    LOG_SYNC
+  }
+}
@@ -0,0 +1,24 @@
+/*
+ * Copyright (C) 2023 timesnake
+ */
+
+package de.timesnake.library.network;
+
+import java.util.Map;
+
+public interface NetworkMetricsMXBean {
+
+  Map<String, Long> getCounts();
+
+  Map<String, Long> getTotalMillis();
+
+  Map<String, Long> getFailures();
+
+  Map<String, Long> getCacheHits();
+
+  Map<String, Long> getCacheMisses();
+
+  long getFilesCopied();
+
+  long getBytesCopied();
+}
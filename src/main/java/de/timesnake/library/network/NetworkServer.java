@@ -189,12 +189,27 @@ public class NetworkServer extends NetworkServerInfo {
   }
 
   public enum CopyType {
-    NONE, COPY, SYNC
+    NONE,
+    COPY,
+    SYNC
+  }
+
+  public enum TemplateCopyType {
+    /**
+     * Copies every template file into the server directory.
+     */
+    COPY,
+    /**
+     * Hardlinks immutable template files (plugin jars, archives) and copies all other files.
+     * Falls back to copying if the template and the server directory are on different file systems.
+     */
+    LINK
   }
 
   public static class Options {
 
     private CopyType worldCopyType = CopyType.NONE;
+    private TemplateCopyType templateCopyType = TemplateCopyType.COPY;
     private boolean syncPlayerData = false;
     private boolean syncLogs = true;
 
@@ -211,6 +226,15 @@ public class NetworkServer extends NetworkServerInfo {
       return worldCopyType;
     }
 
+    public Options setTemplateCopyType(TemplateCopyType templateCopyType) {
+      this.templateCopyType = templateCopyType;
+      return this;
+    }
+
+    public TemplateCopyType getTemplateCopyType() {
+      return templateCopyType;
+    }
+
     @Deprecated
     public Options setSyncPlayerData(boolean syncPlayerData) {
       this.syncPlayerData = syncPlayerData;
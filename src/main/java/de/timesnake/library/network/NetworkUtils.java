@@ -4,26 +4,25 @@
 
 package de.timesnake.library.network;
 
-import com.moandjiezana.toml.Toml;
-import com.moandjiezana.toml.TomlWriter;
 import de.timesnake.library.basic.util.ServerType;
 import de.timesnake.library.network.NetworkServer.CopyType;
 import de.timesnake.library.network.NetworkServer.Options;
-import freemarker.template.Configuration;
-import freemarker.template.Template;
+import de.timesnake.library.network.NetworkServer.TemplateCopyType;
 import freemarker.template.TemplateException;
-import freemarker.template.TemplateExceptionHandler;
 import org.apache.commons.io.FileUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.*;
-import java.nio.file.Files;
-import java.nio.file.InvalidPathException;
-import java.nio.file.Path;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
-public class NetworkUtils implements Network {
+public class NetworkUtils implements Network, AutoCloseable {
 
   public static Network getInstance() {
     return instance;
@@ -31,67 +30,405 @@ public class NetworkUtils implements Network {
 
   private static Network instance;
 
+  /**
+   * Depth of world links of servers, e.g. {@code servers/<name>/world}.
+   */
+  private static final int SERVER_LINK_DEPTH = 2;
+  /**
+   * Depth of world links of pooled and staged servers, e.g.
+   * {@code servers.d/pool/<instance>/<id>/world}.
+   */
+  private static final int SERVER_DATA_LINK_DEPTH = 4;
+
+  private static final int WORLD_COPY_ATTEMPTS = 3;
+  private static final Duration WORLD_COPY_RETRY_DELAY = Duration.ofMillis(50);
+
   private final Logger logger = LogManager.getLogger("network-utils");
 
   private final Path networkPath;
   private final Path serverTemplatePath;
   private final Path worldsTemplatePath;
+  private final Path worldArchivesTemplatePath;
   private final Path playersTemplatePath;
   private final Path logsPath;
 
-  private final Configuration cfg;
+  private final TemplateManifestCache templateManifestCache;
+
+  private final ConfigTemplateRegistry configTemplateRegistry;
+
+  private final SaveIndex saveIndex;
+
+  private final SaveInfoStore saveInfoStore;
+
+  private final ServerPool serverPool;
+
+  private final WorldBlobStore worldBlobStore;
+
+  private final WorldCatalog worldCatalog;
+
+  private final WorldVersions worldVersions;
+
+  private final ServerTrash serverTrash;
+
+  private final LogArchiver logArchiver;
+
+  private final Path worldStagingPath;
+  private final Path worldExportsPath;
+
+  private final InstanceDirectory stagingDirectory;
+  private final Path stagingPath;
+  private final AtomicLong stagingCounter = new AtomicLong();
+
+  private FileCopier fileCopier = new FileCopier();
+
+  private TemplateFileCache templateFileCache;
+
+  private volatile NetworkMetrics metrics = NetworkMetrics.NO_OP;
+
+  private boolean compareWorldExportContent = false;
+
+  private boolean archiveWorldExports = false;
+
+  private boolean skipUnusedRegions = false;
+
+  private int worldVersionRetention = 0;
 
   public NetworkUtils(Path networkPath) {
     instance = this;
     this.networkPath = networkPath;
     this.serverTemplatePath = this.networkPath.resolve(TEMPLATE_DIR_NAME).resolve(SERVERS_TEMPLATE_NAME);
     this.worldsTemplatePath = this.networkPath.resolve(TEMPLATE_DIR_NAME).resolve(WORLDS_TEMPLATE_NAME);
+    this.worldArchivesTemplatePath = this.networkPath.resolve(TEMPLATE_DIR_NAME).resolve(WORLD_ARCHIVES_TEMPLATE_NAME);
     this.playersTemplatePath = this.networkPath.resolve(TEMPLATE_DIR_NAME).resolve(PLAYERS_TEMPLATE_NAME);
     this.logsPath = this.networkPath.resolve(LOGS_DIR_NAME);
+    this.logArchiver = new LogArchiver(this.logsPath);
+
+    this.templateManifestCache = new TemplateManifestCache(this.serverTemplatePath);
+    this.worldCatalog = new WorldCatalog(this.worldsTemplatePath);
+    this.worldStagingPath = this.networkPath.resolve(TEMPLATE_DIR_NAME).resolve(INDEX_DIR_NAME).resolve(STAGING_DIR_NAME);
+    this.worldExportsPath = this.networkPath.resolve(TEMPLATE_DIR_NAME).resolve(INDEX_DIR_NAME).resolve(EXPORTS_DIR_NAME);
+    this.worldVersions = new WorldVersions(this.worldsTemplatePath,
+        this.networkPath.resolve(TEMPLATE_DIR_NAME).resolve(VERSIONS_DIR_NAME), this.worldExportsPath);
+
+    this.serverPool = new ServerPool(this.networkPath.resolve(SERVERS_DATA_DIR_NAME).resolve(POOL_DIR_NAME), (key, dest) -> {
+      PhaseTimer timer = new PhaseTimer(this.metrics, NetworkMetrics.PROVISION_POOL);
+      ServerCreationResult.Fail fail = this.provisionServer(dest.getFileName().toString(), key, dest, timer, null);
+      if (fail != null) {
+        throw new IOException(fail.getReason());
+      }
+      timer.success(dest);
+    });
+    this.templateManifestCache.addInvalidationListener(this.serverPool::clear);
+    this.worldCatalog.addInvalidationListener(this.serverPool::clear);
+
+    this.configTemplateRegistry = ConfigTemplateRegistry.createDefault();
+
+    this.saveIndex = new SaveIndex(this.serverTemplatePath,
+        this.networkPath.resolve(TEMPLATE_DIR_NAME).resolve(INDEX_DIR_NAME).resolve(SERVERS_TEMPLATE_NAME));
+
+    this.saveInfoStore = new SaveInfoStore(this.serverTemplatePath,
+        this.networkPath.resolve(TEMPLATE_DIR_NAME).resolve(INDEX_DIR_NAME).resolve(LOCKS_DIR_NAME));
+
+    this.serverTrash = new ServerTrash(this.networkPath.resolve(SERVERS_DATA_DIR_NAME).resolve(TRASH_DIR_NAME));
+
+    // servers of dead processes which were not created completely are trashed
+    Path stagingParentPath = this.networkPath.resolve(SERVERS_DATA_DIR_NAME).resolve(STAGING_DIR_NAME);
+    InstanceDirectory stagingDirectory;
+    try {
+      stagingDirectory = InstanceDirectory.create(stagingParentPath, this.serverTrash::trash);
+    } catch (IOException e) {
+      this.logger.warn("Failed to create staging directory in {}, staged servers of this process are not swept: {}",
+          stagingParentPath, e.getMessage());
+      stagingDirectory = null;
+    }
+    this.stagingDirectory = stagingDirectory;
+    this.stagingPath = stagingDirectory != null ? stagingDirectory.getPath()
+        : stagingParentPath.resolve("unlocked-" + ProcessHandle.current().pid() + "-" + System.currentTimeMillis());
+
+    this.worldBlobStore = new WorldBlobStore(this.networkPath.resolve(TEMPLATE_DIR_NAME).resolve(BLOBS_DIR_NAME));
+  }
+
+  /**
+   * Stops the background threads and watchers and deletes the pooled servers.
+   */
+  @Override
+  public void close() {
+    this.serverPool.shutdown();
+    this.templateManifestCache.close();
+    this.worldCatalog.close();
+    this.serverTrash.shutdown();
+    this.logArchiver.stop();
+
+    if (this.stagingDirectory != null) {
+      try {
+        this.stagingDirectory.close();
+      } catch (IOException e) {
+        this.logger.warn("Failed to release staging directory {}: {}", this.stagingPath, e.getMessage());
+      }
+    }
+  }
+
+  public ConfigTemplateRegistry getConfigTemplateRegistry() {
+    return configTemplateRegistry;
+  }
+
+  public FileCopier getFileCopier() {
+    return fileCopier;
+  }
+
+  public NetworkUtils setFileCopier(FileCopier fileCopier) {
+    this.fileCopier = fileCopier;
+    return this;
+  }
 
-    this.cfg = new Configuration(Configuration.VERSION_2_3_29);
-    cfg.setClassForTemplateLoading(this.getClass(), "/templates");
-    cfg.setDefaultEncoding("UTF-8");
-    cfg.setTemplateExceptionHandler(TemplateExceptionHandler.RETHROW_HANDLER);
-    cfg.setLogTemplateExceptions(false);
-    cfg.setWrapUncheckedExceptions(true);
-    cfg.setFallbackOnNullLoopVariable(false);
-    cfg.setNumberFormat("0.######");
+  /**
+   * If enabled, world exports compare the content of files with equal size but different modification
+   * time and keep them if equal, instead of copying them.
+   */
+  public NetworkUtils setCompareWorldExportContent(boolean compareWorldExportContent) {
+    this.compareWorldExportContent = compareWorldExportContent;
+    return this;
+  }
+
+  public TemplateFileCache getTemplateFileCache() {
+    return templateFileCache;
+  }
+
+  /**
+   * Sets the cache server template files are copied from, null disables caching.
+   */
+  public NetworkUtils setTemplateFileCache(TemplateFileCache templateFileCache) {
+    this.templateFileCache = templateFileCache;
+    if (templateFileCache != null) {
+      templateFileCache.setMetrics(this.metrics);
+    }
+    return this;
+  }
+
+  /**
+   * If enabled, exported worlds are also packed into archives, see {@link #archiveWorlds(ServerType, String)}.
+   */
+  public NetworkUtils setArchiveWorldExports(boolean archiveWorldExports) {
+    this.archiveWorldExports = archiveWorldExports;
+    return this;
+  }
+
+  /**
+   * If enabled, copied worlds omit region files without chunks and outside the world bounds, see
+   * {@link RegionFilter}. Does not apply to archived worlds.
+   */
+  public NetworkUtils setSkipUnusedRegions(boolean skipUnusedRegions) {
+    this.skipUnusedRegions = skipUnusedRegions;
+    return this;
+  }
+
+  /**
+   * Number of generations kept per world template if exports are versioned, see {@link WorldVersions}.
+   * The current generation and generations pinned by servers are kept additionally. 0 disables
+   * versioning (default).
+   */
+  public NetworkUtils setWorldVersionRetention(int worldVersionRetention) {
+    this.worldVersionRetention = worldVersionRetention;
+    return this;
+  }
+
+  public LogArchiver getLogArchiver() {
+    return logArchiver;
+  }
+
+  public WorldVersions getWorldVersions() {
+    return worldVersions;
+  }
+
+  public NetworkMetrics getMetrics() {
+    return metrics;
+  }
+
+  public NetworkUtils setMetrics(NetworkMetrics metrics) {
+    this.metrics = metrics;
+    this.templateManifestCache.setMetrics(metrics);
+    if (this.templateFileCache != null) {
+      this.templateFileCache.setMetrics(metrics);
+    }
+    return this;
+  }
+
+  public ServerPool getServerPool() {
+    return serverPool;
+  }
+
+  public WorldCatalog getWorldCatalog() {
+    return worldCatalog;
+  }
+
+  public WorldBlobStore getWorldBlobStore() {
+    return worldBlobStore;
+  }
+
+  /**
+   * Deduplicates the world templates of the type and task (all tasks if null) through the blob store
+   * and deletes unreferenced blobs. World templates linked by servers ({@link CopyType#SYNC}) are
+   * skipped, see {@link WorldBlobStore} for the restrictions on linked worlds. A server linking a world
+   * while it is deduplicated is not detected.
+   */
+  public WorldBlobStore.Result deduplicateWorldTemplates(ServerType type, String task) throws IOException {
+    Path src = this.worldsTemplatePath.resolve(type.getShortName());
+
+    if (task != null) {
+      src = src.resolve(task);
+    }
+
+    WorldBlobStore.Result result = this.worldBlobStore.deduplicate(src, this.getLinkedWorldTemplates());
+    this.worldBlobStore.collectGarbage();
+    return result;
   }
 
   @Override
   public ServerCreationResult createServer(NetworkServer server) {
-    Options options = server.getOptions();
+    return this.createServer(server, null);
+  }
+
+  @Override
+  public Map<String, ServerCreationResult> createServers(List<NetworkServer> servers) {
+    Set<String> names = new HashSet<>();
+    for (NetworkServer server : servers) {
+      if (!names.add(server.getName())) {
+        throw new IllegalArgumentException("duplicate server name " + server.getName());
+      }
+    }
+
+    Map<ServerPool.Key, SharedTemplates> templatesByKey = new HashMap<>();
+    Map<String, ServerCreationResult> resultByName = new ConcurrentHashMap<>();
+    List<NetworkServer> provisioned = new ArrayList<>(servers.size());
+
+    for (NetworkServer server : servers) {
+      ServerPool.Key key = ServerPool.Key.of(server);
+      SharedTemplates templates = templatesByKey.computeIfAbsent(key, this::resolveSharedTemplates);
+      if (templates.manifest() == null) {
+        resultByName.put(server.getName(), new ServerCreationResult.Fail("no server template found"));
+      } else {
+        provisioned.add(server);
+      }
+    }
 
+    // file transfers are bounded by the copier across all servers
     try {
-      this.copyServerFromTemplate(server);
+      NetworkFileUtils.forEachParallel(provisioned, this.fileCopier.getParallelism(), server -> {
+        ServerCreationResult result;
+        try {
+          result = this.createServer(server, templatesByKey.get(ServerPool.Key.of(server)));
+        } catch (RuntimeException e) {
+          this.logger.warn("Failed to create server {}: {}", server.getName(), e.toString());
+          result = new ServerCreationResult.Fail("failed to create server");
+        }
+        resultByName.put(server.getName(), result);
+      });
     } catch (IOException e) {
-      this.logger.warn("No template found for server {}: {}", server.getName(), e.getMessage());
-      return new ServerCreationResult.Fail("no server template found");
+      // not thrown, failures are part of the results
+      throw new UncheckedIOException(e);
     }
 
-    if (options.getWorldCopyType() == CopyType.COPY) {
+    Map<String, ServerCreationResult> results = new LinkedHashMap<>();
+    for (NetworkServer server : servers) {
+      results.put(server.getName(), resultByName.get(server.getName()));
+    }
+    return results;
+  }
+
+  /**
+   * @return the templates resolved once for all servers of the key, without manifest if no template
+   * was found
+   */
+  private SharedTemplates resolveSharedTemplates(ServerPool.Key key) {
+    TemplateManifest manifest;
+    try {
+      manifest = this.templateManifestCache.get(key.type(), key.task());
+    } catch (IOException e) {
+      this.logger.warn("No template found for servers {} {}: {}", key.type().getShortName(), key.task(),
+          e.getMessage());
+      return new SharedTemplates(null, List.of());
+    }
+
+    List<String> worldNames = key.worldCopyType() == CopyType.SYNC ? this.getWorldNames(key.type(), key.task())
+        : List.of();
+    return new SharedTemplates(manifest, worldNames);
+  }
+
+  /**
+   * @param templates templates shared with other servers, resolved per server if null
+   */
+  private ServerCreationResult createServer(NetworkServer server, SharedTemplates templates) {
+    PhaseTimer timer = new PhaseTimer(this.metrics, NetworkMetrics.CREATE_SERVER);
+    Path dest = this.networkPath.resolve(SERVERS).resolve(server.getName());
+
+    if (Files.exists(dest, LinkOption.NOFOLLOW_LINKS)) {
+      // update existing servers in place to keep their data
+      ServerCreationResult.Fail fail = this.buildServer(server, templates, dest, timer);
+      return fail != null ? fail : timer.success(dest);
+    }
+
+    Path staging = this.stagingPath.resolve(server.getName() + "-" + System.currentTimeMillis() + "-"
+        + this.stagingCounter.incrementAndGet());
+
+    ServerCreationResult.Fail fail = this.buildServer(server, templates, staging, timer);
+    if (fail != null) {
+      this.serverTrash.trash(staging);
+      return fail;
+    }
+
+    try {
+      Files.move(staging, dest, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      this.logger.warn("Failed to publish server directory of server {}: {}", server.getName(), e.getMessage());
+      this.serverTrash.trash(staging);
+      return timer.fail("failed to publish server directory");
+    }
+
+    return timer.success(dest);
+  }
+
+  /**
+   * Provisions (or takes from the pool) the server directory and adds configs and logs.
+   *
+   * @param serverPath the server directory, must not exist yet to use a pooled directory
+   * @return null if successful, otherwise the failure
+   */
+  private ServerCreationResult.Fail buildServer(NetworkServer server, SharedTemplates templates, Path serverPath,
+                                                PhaseTimer timer) {
+    Options options = server.getOptions();
+    ServerPool.Key key = ServerPool.Key.of(server);
+
+    Path pooled = Files.exists(serverPath) ? null : this.serverPool.take(key);
+    if (pooled != null) {
       try {
-        this.copyServerWorlds(server);
+        Files.createDirectories(serverPath.getParent());
+        Files.move(pooled, serverPath, StandardCopyOption.ATOMIC_MOVE);
       } catch (IOException e) {
-        this.logger.warn("Failed to copy worlds for server {}: {}", server.getName(), e.getMessage());
-        return new ServerCreationResult.Fail("failed to copy worlds");
+        this.logger.warn("Failed to use pooled directory for server {}: {}", server.getName(), e.getMessage());
+        pooled = null;
       }
-    } else if (options.getWorldCopyType() == CopyType.SYNC) {
-      try {
-        this.syncServerWorlds(server);
-      } catch (IOException e) {
-        this.logger.warn("Failed to sync worlds for server {}: {}", server.getName(), e.getMessage());
-        return new ServerCreationResult.Fail("failed to sync worlds");
+    }
+
+    if (this.serverPool.getSize(key) > 0) {
+      this.metrics.recordCacheAccess(NetworkMetrics.SERVER_POOL, pooled != null);
+    }
+
+    if (pooled != null) {
+      timer.lap(NetworkMetrics.Phase.POOL_TAKE);
+    } else {
+      ServerCreationResult.Fail fail = this.provisionServer(server.getName(), key, serverPath, timer, templates);
+      if (fail != null) {
+        return fail;
       }
     }
 
     try {
-      this.generateConfigurations(server);
+      this.configTemplateRegistry.render(server, serverPath);
     } catch (IOException | TemplateException e) {
       this.logger.warn("Failed to generate config files for server {}: {}", server.getName(), e.getMessage());
-      return new ServerCreationResult.Fail("failed to generate config files");
+      return timer.fail("failed to generate config files");
     }
+    timer.lap(NetworkMetrics.Phase.CONFIG_GENERATION);
 
     if (options.isSyncPlayerData()) {
       // TODO fix for 1.20.1
@@ -105,82 +442,194 @@ public class NetworkUtils implements Network {
 
     if (options.isSyncLogs()) {
       try {
-        this.syncLogs(server);
+        this.syncLogs(server, serverPath);
       } catch (IOException e) {
         this.logger.warn("Failed to sync logs for server {}: {}", server.getName(), e.getMessage());
-        return new ServerCreationResult.Fail("failed to sync logs");
+        return timer.fail("failed to sync logs");
+      }
+      timer.lap(NetworkMetrics.Phase.LOG_SYNC);
+    }
+
+    return null;
+  }
+
+  /**
+   * Copies templates and worlds, all steps not depending on the server name.
+   *
+   * @return null if successful, otherwise the failure
+   */
+  private ServerCreationResult.Fail provisionServer(String name, ServerPool.Key key, Path dest, PhaseTimer timer,
+                                                    SharedTemplates templates) {
+    try {
+      TemplateManifest manifest = templates != null ? templates.manifest()
+          : this.templateManifestCache.get(key.type(), key.task());
+      this.copyServerFromTemplate(manifest, dest, key.templateCopyType());
+    } catch (IOException e) {
+      this.logger.warn("No template found for server {}: {}", name, e.getMessage());
+      return timer.fail("no server template found");
+    }
+    timer.lap(NetworkMetrics.Phase.TEMPLATE_COPY);
+
+    if (key.worldCopyType() == CopyType.COPY) {
+      try {
+        this.copyServerWorlds(key.type(), key.task(), dest);
+      } catch (IOException e) {
+        this.logger.warn("Failed to copy worlds for server {}: {}", name, e.getMessage());
+        return timer.fail("failed to copy worlds");
       }
+      timer.lap(NetworkMetrics.Phase.WORLD_COPY);
+    } else if (key.worldCopyType() == CopyType.SYNC) {
+      List<String> worldNames = templates != null ? templates.worldNames() : this.getWorldNames(key.type(), key.task());
+      for (String worldName : worldNames) {
+        this.syncWorld(name, key.type(), key.task(), worldName, dest);
+      }
+      timer.lap(NetworkMetrics.Phase.WORLD_SYNC);
     }
 
-    return new ServerCreationResult.Success(
-        this.networkPath.resolve(SERVERS).resolve(server.getName()));
+    return null;
+  }
+
+  @Override
+  public boolean deleteServer(NetworkServerInfo info) {
+    // same directory as created by createServer
+    return this.serverTrash.trash(this.networkPath.resolve(SERVERS).resolve(info.getName()));
   }
 
   @Override
   public void generateConfigurations(NetworkServer server) throws IOException, TemplateException {
-    Template serverProperties = cfg.getTemplate("server.properties.ftl");
-    Template paperGlobal = cfg.getTemplate("paper-global.yml.ftl");
-    Template spigot = cfg.getTemplate("spigot.yml.ftl");
-    Template bukkit = cfg.getTemplate("bukkit.yml.ftl");
-    Template channel = cfg.getTemplate("channel_config.toml.ftl");
-
-    Map<String, Object> rootServerProperties = new HashMap<>();
-    Map<String, Object> rootPaperGlobal = new HashMap<>();
-    Map<String, Object> rootSpigot = new HashMap<>();
-    Map<String, Object> rootBukkit = new HashMap<>();
-    Map<String, Object> rootChannel = new HashMap<>();
-
-    rootServerProperties.put("server", server);
-    rootPaperGlobal.put("server", server);
-    rootSpigot.put("server", server);
-    rootBukkit.put("server", server);
-    rootChannel.put("server", server);
-
-    Writer outServerProperties = new OutputStreamWriter(
-        new FileOutputStream(this.networkPath.resolve(SERVERS).resolve(server.getName())
-            .resolve("server.properties").toFile()));
-    Files.createDirectories(this.networkPath.resolve(SERVERS).resolve(server.getName())
-        .resolve("config"));
-    Writer outPaperGlobal = new OutputStreamWriter(
-        new FileOutputStream(this.networkPath.resolve(SERVERS).resolve(server.getName())
-            .resolve("config").resolve("paper-global.yml").toFile()));
-    Writer outSpigot = new OutputStreamWriter(
-        new FileOutputStream(this.networkPath.resolve(SERVERS).resolve(server.getName())
-            .resolve("spigot.yml").toFile()));
-    Writer outBukkit = new OutputStreamWriter(
-        new FileOutputStream(this.networkPath.resolve(SERVERS).resolve(server.getName())
-            .resolve("bukkit.yml").toFile()));
-
-    Files.createDirectories(this.networkPath.resolve(SERVERS).resolve(server.getName())
-        .resolve("plugins").resolve("channel"));
-    Writer outChannel = new OutputStreamWriter(
-        new FileOutputStream(this.networkPath.resolve(SERVERS).resolve(server.getName())
-            .resolve("plugins").resolve("channel")
-            .resolve("config.toml").toFile()));
-
-    serverProperties.process(rootServerProperties, outServerProperties);
-    paperGlobal.process(rootPaperGlobal, outPaperGlobal);
-    spigot.process(rootSpigot, outSpigot);
-    bukkit.process(rootBukkit, outBukkit);
-    channel.process(rootChannel, outChannel);
-
-    outServerProperties.close();
-    outPaperGlobal.close();
-    outSpigot.close();
-    outBukkit.close();
-    outChannel.close();
+    this.configTemplateRegistry.render(server, this.networkPath.resolve(SERVERS).resolve(server.getName()));
   }
 
   @Override
   public void copyServerWorlds(NetworkServerInfo info) throws IOException {
-    Path src = this.worldsTemplatePath.resolve(info.getType().getShortName());
-    Path dest = this.networkPath.resolve(SERVERS).resolve(info.getFolderName());
+    this.copyServerWorlds(info.getType(), info.getTask(), this.networkPath.resolve(SERVERS).resolve(info.getFolderName()));
+  }
 
-    if (info.getTask() != null) {
-      src = src.resolve(info.getTask());
+  private void copyServerWorlds(ServerType type, String task, Path dest) throws IOException {
+    Path src = this.worldsTemplatePath.resolve(type.getShortName());
+    Path archiveSrc = this.worldArchivesTemplatePath.resolve(type.getShortName());
+
+    if (task != null) {
+      src = src.resolve(task);
+      archiveSrc = archiveSrc.resolve(task);
     }
 
-    FileUtils.copyDirectory(src.toFile(), dest.toFile());
+    boolean archived = Files.isDirectory(archiveSrc);
+
+    if (!archived && !Files.isDirectory(src)) {
+      throw new NoSuchFileException(src.toString(), null, "source directory does not exist");
+    }
+
+    // archived worlds are extracted, all other worlds copied
+    Set<String> archivedNames = new HashSet<>();
+    if (archived) {
+      WorldArchive worldArchive = new WorldArchive(this.fileCopier);
+      try (DirectoryStream<Path> archives = Files.newDirectoryStream(archiveSrc,
+          "*" + WorldArchive.FILE_EXTENSION)) {
+        for (Path archive : archives) {
+          String fileName = archive.getFileName().toString();
+          String worldName = fileName.substring(0, fileName.length() - WorldArchive.FILE_EXTENSION.length());
+
+          // outdated archives are ignored, the world is copied instead
+          Path world = src.resolve(worldName);
+          if (!Files.isDirectory(world) || !worldArchive.isCurrent(archive, world, this.skipUnusedRegions)) {
+            this.logger.info("Ignoring outdated world archive {}", archive);
+            continue;
+          }
+
+          WorldArchive.Result result = worldArchive.extract(archive, dest.resolve(worldName));
+          this.metrics.recordCopy(result.files(), result.archiveBytes());
+          archivedNames.add(worldName);
+        }
+      }
+    }
+
+    String[] names = src.toFile().list();
+    if (names == null) {
+      return;
+    }
+
+    for (String name : names) {
+      Path file = src.resolve(name);
+      // temporary links of exports
+      if (archivedNames.contains(name) || name.startsWith(".")) {
+        continue;
+      }
+
+      if (Files.isRegularFile(file)) {
+        Files.createDirectories(dest);
+        FileCopier.copyFile(file, dest.resolve(name));
+        this.metrics.recordCopy(1, Files.size(file));
+      } else {
+        FileCopier.Result result = this.copyWorld(file, dest.resolve(name));
+        this.metrics.recordCopy(result.files(), result.bytes());
+      }
+    }
+  }
+
+  /**
+   * Copies the world from its real path, so that all files are from the same export. An export
+   * replacing the world while copying fails the copy, it is started again then, see
+   * {@link WorldExporter}.
+   */
+  private FileCopier.Result copyWorld(Path world, Path dest) throws IOException {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        Path realWorld = world.toRealPath();
+        return this.fileCopier.copyDirectory(realWorld, dest,
+            this.skipUnusedRegions ? RegionFilter.forWorld(realWorld) : null);
+      } catch (NoSuchFileException e) {
+        if (attempt >= WORLD_COPY_ATTEMPTS) {
+          throw e;
+        }
+        NetworkFileUtils.deleteRecursively(dest);
+        try {
+          Thread.sleep(WORLD_COPY_RETRY_DELAY.toMillis());
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("interrupted");
+        }
+      }
+    }
+  }
+
+  /**
+   * Packs all worlds of the type and task (all tasks if null) into archives, which are extracted
+   * instead of copying the world directories for {@link CopyType#COPY}.
+   *
+   * @return the number of packed worlds
+   */
+  public int archiveWorlds(ServerType type, String task) throws IOException {
+    Path src = this.worldsTemplatePath.resolve(type.getShortName());
+    Path dest = this.worldArchivesTemplatePath.resolve(type.getShortName());
+
+    if (task != null) {
+      src = src.resolve(task);
+      dest = dest.resolve(task);
+    }
+
+    int worlds = 0;
+    WorldArchive worldArchive = new WorldArchive(this.fileCopier);
+    try (DirectoryStream<Path> worldDirs = Files.newDirectoryStream(src, Files::isDirectory)) {
+      for (Path worldDir : worldDirs) {
+        if (!worldDir.getFileName().toString().startsWith(".")) {
+          this.packWorld(worldArchive, worldDir, dest.resolve(worldDir.getFileName() + WorldArchive.FILE_EXTENSION));
+          worlds++;
+        }
+      }
+    }
+
+    this.serverPool.clear();
+    return worlds;
+  }
+
+  /**
+   * Packs the real world directory, filtered like copies of the world, see
+   * {@link #setSkipUnusedRegions(boolean)}.
+   */
+  private WorldArchive.Result packWorld(WorldArchive worldArchive, Path world, Path archive) throws IOException {
+    Path realWorld = world.toRealPath();
+    return worldArchive.pack(realWorld, archive, this.skipUnusedRegions ? RegionFilter.forWorld(realWorld) : null);
   }
 
   @Override
@@ -192,15 +641,19 @@ public class NetworkUtils implements Network {
 
   @Override
   public void syncLogs(NetworkServerInfo info) throws IOException {
+    this.syncLogs(info, this.networkPath.resolve(SERVERS).resolve(info.getName()));
+  }
+
+  private void syncLogs(NetworkServerInfo info, Path serverPath) throws IOException {
     Path src = this.logsPath.resolve(info.getType().getShortName());
 
     if (info.getTask() != null) {
       src = src.resolve(info.getTask());
     }
 
-    src = src.resolve(info.getName()).resolve(DATE_FORMAT.format(new Date()));
+    src = src.resolve(info.getName()).resolve(DATE_FORMAT.format(LocalDateTime.now()));
 
-    Path dest = this.networkPath.resolve(SERVERS).resolve(info.getName()).resolve("logs");
+    Path dest = serverPath.resolve("logs");
 
     if (dest.toFile().exists()) {
       dest.toFile().delete();
@@ -229,20 +682,43 @@ public class NetworkUtils implements Network {
 
   @Override
   public WorldSyncResult syncWorld(NetworkServerInfo server, String worldName) {
-    String name = server.getName();
-    ServerType type = server.getType();
-    String task = server.getTask();
+    long start = System.nanoTime();
+    return this.recordWorldSync(NetworkMetrics.SYNC_WORLD, start, this.syncWorld(server.getName(), server.getType(),
+        server.getTask(), worldName, this.networkPath.resolve(SERVERS).resolve(server.getName())));
+  }
 
-    Path src = NetworkFileUtils.resolveWorldTemplatePath(this.worldsTemplatePath, type, task);
+  private WorldSyncResult syncWorld(String name, ServerType type, String task, String worldName, Path serverPath) {
+    Path src = NetworkFileUtils.resolveWorldTemplatePath(this.worldsTemplatePath, type, task).resolve(worldName);
 
-    src = src.resolve(worldName);
-    Path dest = this.networkPath.resolve(SERVERS).resolve(name).resolve(worldName);
+    // generations share files with older ones, a versioned world gets a private copy of its current generation
+    Path world = this.worldsTemplatePath.relativize(src);
+    Integer version = this.worldVersions.getCurrentVersion(world);
+    if (version != null) {
+      return this.copyWorldVersion(name, this.worldVersions.getVersionPath(world, version), serverPath.resolve(worldName));
+    }
 
-    if (dest.toFile().exists()) {
+    return this.linkWorld(name, src, serverPath.resolve(worldName));
+  }
+
+  private WorldSyncResult copyWorldVersion(String name, Path src, Path dest) {
+    try {
+      NetworkFileUtils.deleteRecursively(dest);
+      FileCopier.Result result = this.fileCopier.copyDirectory(src.toRealPath(), dest, null);
+      this.metrics.recordCopy(result.files(), result.bytes());
+    } catch (IOException e) {
+      this.logger.warn("Failed to copy world version for server {}: {}", name, e.getMessage());
+      return new WorldSyncResult.Fail("failed to copy world version");
+    }
+
+    return new WorldSyncResult.Successful(dest);
+  }
+
+  private WorldSyncResult linkWorld(String name, Path src, Path dest) {
+    if (Files.exists(dest, LinkOption.NOFOLLOW_LINKS)) {
       try {
         FileUtils.delete(dest.toFile());
       } catch (IOException e) {
-        this.logger.warn("Failed to delete old world file for server {}: {}", server.getName(), e.getMessage());
+        this.logger.warn("Failed to delete old world file for server {}: {}", name, e.getMessage());
         return new WorldSyncResult.Fail("failed to delete old world file");
       }
     }
@@ -250,7 +726,7 @@ public class NetworkUtils implements Network {
     try {
       Files.createSymbolicLink(dest, src);
     } catch (IOException e) {
-      this.logger.warn("Failed to create world link for server {}: {}", server.getName(), e.getMessage());
+      this.logger.warn("Failed to create world link for server {}: {}", name, e.getMessage());
       return new WorldSyncResult.Fail("failed to create world link");
     }
 
@@ -259,12 +735,36 @@ public class NetworkUtils implements Network {
 
   @Override
   public WorldSyncResult exportAndSyncWorld(String serverName, String worldName, Path exportPath) {
+    long start = System.nanoTime();
+    return this.recordWorldSync(NetworkMetrics.EXPORT_WORLD, start, this.exportWorld(serverName, worldName, exportPath));
+  }
+
+  private WorldSyncResult exportWorld(String serverName, String worldName, Path exportPath) {
+    if (this.worldVersionRetention > 0) {
+      return this.exportWorldVersion(serverName, worldName, exportPath);
+    }
+
     Path src = this.networkPath.resolve(SERVERS).resolve(serverName).resolve(worldName);
     Path dest = this.worldsTemplatePath.resolve(exportPath).resolve(worldName);
 
     try {
-      FileUtils.copyDirectory(src.toFile(), dest.toFile());
-      FileUtils.deleteDirectory(src.toFile());
+      boolean linked = Files.isSymbolicLink(src);
+      Path exportSrc = src.toRealPath();
+
+      if (linked && Files.exists(dest) && exportSrc.equals(dest.toRealPath())) {
+        this.archiveExportedWorld(dest, exportPath, worldName);
+        return new WorldSyncResult.Successful(dest);
+      }
+
+      WorldExporter.Result result = new WorldExporter(this.fileCopier, this.compareWorldExportContent,
+          this.worldStagingPath, this.worldExportsPath).export(exportSrc, dest);
+      this.metrics.recordCopy(result.copiedFiles(), result.copiedBytes());
+
+      if (linked) {
+        Files.delete(src);
+      } else {
+        FileUtils.deleteDirectory(src.toFile());
+      }
     } catch (IOException e) {
       this.logger.warn("Failed to export world for server {}: {}", serverName, e.getMessage());
       return new WorldSyncResult.Fail("failed to export world");
@@ -277,21 +777,169 @@ public class NetworkUtils implements Network {
       return new WorldSyncResult.Fail("failed to create world link");
     }
 
+    this.archiveExportedWorld(dest, exportPath, worldName);
+    this.worldCatalog.invalidate();
+    return new WorldSyncResult.Successful(dest);
+  }
+
+  /**
+   * Publishes the world as new generation of the template. The server keeps its private world, linking
+   * it would let the server write into the shared generation.
+   */
+  private WorldSyncResult exportWorldVersion(String serverName, String worldName, Path exportPath) {
+    Path src = this.networkPath.resolve(SERVERS).resolve(serverName).resolve(worldName);
+    Path world = exportPath.resolve(worldName);
+    Path dest = this.worldsTemplatePath.resolve(world);
+
+    try {
+      Path exportSrc = src.toRealPath();
+
+      // linked to the template or one of its generations, nothing to publish
+      Path versionsPath = this.worldVersions.getVersionsPath(world);
+      if (Files.isSymbolicLink(src) && (Files.exists(dest) && exportSrc.equals(dest.toRealPath())
+          || Files.isDirectory(versionsPath) && exportSrc.startsWith(versionsPath.toRealPath()))) {
+        return new WorldSyncResult.Successful(dest);
+      }
+
+      int version = this.worldVersions.publish(exportSrc, world,
+          new WorldExporter(this.fileCopier, this.compareWorldExportContent, this.worldStagingPath,
+              this.worldExportsPath));
+      this.logger.info("Exported world {} of server {} as version {}", world, serverName, version);
+    } catch (IOException e) {
+      this.logger.warn("Failed to export world for server {}: {}", serverName, e.getMessage());
+      return new WorldSyncResult.Fail("failed to export world");
+    }
+
+    this.worldVersions.clean(world, this.worldVersionRetention);
+    this.archiveExportedWorld(dest, exportPath, worldName);
+    this.worldCatalog.invalidate();
     return new WorldSyncResult.Successful(dest);
   }
 
+  @Override
+  public WorldSyncResult rollbackWorld(Path exportPath, String worldName, int version) {
+    Path world = exportPath.resolve(worldName);
+
+    try {
+      this.worldVersions.setCurrentVersion(world, version);
+    } catch (IOException e) {
+      this.logger.warn("Failed to set version {} of world {}: {}", version, world, e.getMessage());
+      return new WorldSyncResult.Fail("failed to set world version");
+    }
+
+    Path template = this.worldsTemplatePath.resolve(world);
+    this.archiveExportedWorld(template, exportPath, worldName);
+    this.worldCatalog.invalidate();
+    return new WorldSyncResult.Successful(template);
+  }
+
+  @Override
+  public WorldSyncResult pinWorld(NetworkServerInfo server, String worldName, int version) {
+    Path template = NetworkFileUtils.resolveWorldTemplatePath(this.worldsTemplatePath, server.getType(),
+        server.getTask()).resolve(worldName);
+    Path src = this.worldVersions.getVersionPath(this.worldsTemplatePath.relativize(template), version);
+
+    if (!Files.isDirectory(src)) {
+      return new WorldSyncResult.Fail("world version not found");
+    }
+
+    Path dest = this.networkPath.resolve(SERVERS).resolve(server.getName()).resolve(worldName);
+    WorldSyncResult result = this.linkWorld(server.getName(), src.toAbsolutePath(), dest);
+    if (result instanceof WorldSyncResult.Successful) {
+      try {
+        this.worldVersions.pin(this.worldsTemplatePath.relativize(template), version, dest);
+      } catch (IOException e) {
+        this.logger.warn("Failed to pin version {} of world {}: {}", version, template, e.getMessage());
+        return new WorldSyncResult.Fail("failed to pin world version");
+      }
+    }
+    return result;
+  }
+
+  public List<Integer> getWorldVersions(Path exportPath, String worldName) {
+    return this.worldVersions.getVersions(exportPath.resolve(worldName));
+  }
+
+  /**
+   * Finds the world templates linked by servers, pooled and staged servers ({@link CopyType#SYNC}).
+   *
+   * @return real paths of the linked world templates
+   */
+  private Set<Path> getLinkedWorldTemplates() throws IOException {
+    return this.findServerLinks(this.worldsTemplatePath);
+  }
+
+  /**
+   * @return real paths of the links below the servers and their working directories pointing into the
+   * directory
+   */
+  private Set<Path> findServerLinks(Path directory) throws IOException {
+    Set<Path> targets = new HashSet<>();
+    if (!Files.isDirectory(directory)) {
+      return targets;
+    }
+
+    Path realDirectory = directory.toRealPath();
+    Path trashPath = this.networkPath.resolve(SERVERS_DATA_DIR_NAME).resolve(TRASH_DIR_NAME);
+    Map<Path, Integer> depthByRoot = Map.of(this.networkPath.resolve(SERVERS), SERVER_LINK_DEPTH,
+        this.networkPath.resolve(SERVERS_DATA_DIR_NAME), SERVER_DATA_LINK_DEPTH);
+    for (Map.Entry<Path, Integer> root : depthByRoot.entrySet()) {
+      if (!Files.isDirectory(root.getKey())) {
+        continue;
+      }
+
+      Files.walkFileTree(root.getKey(), Set.of(), root.getValue(), new SimpleFileVisitor<>() {
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+          return dir.equals(trashPath) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+          if (attrs.isSymbolicLink()) {
+            try {
+              Path target = file.toRealPath();
+              if (target.startsWith(realDirectory)) {
+                targets.add(target);
+              }
+            } catch (IOException ignored) {
+              // removed concurrently or dangling
+            }
+          }
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException exc) {
+          return FileVisitResult.CONTINUE;
+        }
+      });
+    }
+    return targets;
+  }
+
+  private void archiveExportedWorld(Path world, Path exportPath, String worldName) {
+    if (!this.archiveWorldExports) {
+      return;
+    }
+
+    Path archive = this.worldArchivesTemplatePath.resolve(exportPath).resolve(worldName + WorldArchive.FILE_EXTENSION);
+    try {
+      this.packWorld(new WorldArchive(this.fileCopier), world, archive);
+    } catch (IOException e) {
+      this.logger.warn("Failed to archive exported world {}: {}", world, e.getMessage());
+    }
+  }
+
+
   @Override
   public List<String> getWorldNames(ServerType type, String task) {
-    Path src = NetworkFileUtils.resolveWorldTemplatePath(this.worldsTemplatePath, type, task);
-    String[] names = src.toFile().list();
-    return names != null ? Arrays.asList(names) : List.of();
+    return this.worldCatalog.getWorlds(type, task).stream().map(WorldCatalog.World::name).toList();
   }
 
   @Override
   public List<File> getWorldFiles(ServerType type, String task) {
-    Path src = NetworkFileUtils.resolveWorldTemplatePath(this.worldsTemplatePath, type, task);
-    File[] files = src.toFile().listFiles();
-    return files != null ? Arrays.asList(files) : List.of();
+    return this.worldCatalog.getWorlds(type, task).stream().map(world -> world.path().toFile()).toList();
   }
 
   @Override
@@ -305,6 +953,7 @@ public class NetworkUtils implements Network {
   }
 
   private ServerCreationResult createPlayerServer(String owner, NetworkServer server) {
+    PhaseTimer timer = new PhaseTimer(this.metrics, NetworkMetrics.LOAD_SAVE);
     Path dest = this.networkPath.resolve(SERVERS).resolve(server.getName());
 
     try {
@@ -317,40 +966,50 @@ public class NetworkUtils implements Network {
       NetworkFileUtils.createSymLinks(src, dest);
     } catch (IOException e) {
       this.logger.warn("Failed to link server files for server {}: {}", server.getName(), e.getMessage());
-      return new ServerCreationResult.Fail("failed to link server files");
+      return timer.fail("failed to link server files");
     }
+    timer.lap(NetworkMetrics.Phase.SERVER_LINK);
 
     try {
       this.copyServerFromTemplate(server);
     } catch (IOException e) {
       this.logger.warn("No server template found for server {}: {}", server.getName(), e.getMessage());
-      return new ServerCreationResult.Fail("no server template found");
+      return timer.fail("no server template found");
     }
+    timer.lap(NetworkMetrics.Phase.TEMPLATE_COPY);
 
     try {
       this.generateConfigurations(server);
     } catch (IOException | TemplateException e) {
       this.logger.warn("Failed to generate config files for server {}: {}", server.getName(), e.getMessage());
-      return new ServerCreationResult.Fail("failed to generate config files");
+      return timer.fail("failed to generate config files");
     }
+    timer.lap(NetworkMetrics.Phase.CONFIG_GENERATION);
 
     try {
       this.syncLogs(server);
     } catch (IOException e) {
       this.logger.warn("Failed to sync logs for server {}: {}", server.getName(), e.getMessage());
-      return new ServerCreationResult.Fail("failed to sync logs");
+      return timer.fail("failed to sync logs");
     }
+    timer.lap(NetworkMetrics.Phase.LOG_SYNC);
 
-    return new ServerCreationResult.Success(dest);
+    return timer.success(dest);
   }
 
   @Override
   public ServerInitResult createPublicSave(ServerType type, String task, String name) {
-    return this.initNewPlayerServer(PUBLIC_DIRECTORY, type, task, name);
+    long start = System.nanoTime();
+    return this.recordSaveInit(start, this.initNewPlayerServer(PUBLIC_DIRECTORY, type, task, name));
   }
 
   @Override
   public ServerInitResult createPrivateSave(UUID uuid, ServerType type, String task, String name) {
+    long start = System.nanoTime();
+    return this.recordSaveInit(start, this.initPrivateSave(uuid, type, task, name));
+  }
+
+  private ServerInitResult initPrivateSave(UUID uuid, ServerType type, String task, String name) {
     Path dest = this.serverTemplatePath.resolve(type.getShortName()).resolve(task)
         .resolve(uuid.toString()).resolve(name);
 
@@ -360,27 +1019,18 @@ public class NetworkUtils implements Network {
       return result;
     }
 
-    File infoFile = new File(dest.toFile(), OWN_SERVER_INFO_FILE_NAME);
-
-    if (!infoFile.exists()) {
-      try {
-        infoFile.createNewFile();
-      } catch (IOException e) {
-        this.logger.warn("Failed to create server info file for server {} {} {}: {}", uuid, task, name, e.getMessage());
-        return new ServerInitResult.Fail("failed to create server info file");
-      }
-    }
-
-    TomlWriter tomlWriter = new TomlWriter();
-
+    List<UUID> members;
     try {
-      tomlWriter.write(Map.of(OWN_SERVER_OWNER_UUID, uuid.toString()), infoFile);
-    } catch (IOException e) {
+      Map<String, Object> info = this.saveInfoStore.update(dest, i -> i.put(OWN_SERVER_OWNER_UUID, uuid.toString()));
+      members = info.get(OWN_SERVER_MEMBER_UUIDS) instanceof List<?> memberUuids
+          ? memberUuids.stream().map(m -> UUID.fromString(m.toString())).toList() : List.of();
+    } catch (IOException | IllegalArgumentException e) {
       this.logger.warn("Failed to write into server info file for server {} {} {}: {}", uuid, task, name,
           e.getMessage());
       return new ServerInitResult.Fail("failed to write into server info file");
     }
 
+    this.saveIndex.update(uuid, type, task, name, members);
     return new ServerInitResult.Successful(dest);
   }
 
@@ -419,83 +1069,12 @@ public class NetworkUtils implements Network {
 
   @Override
   public Map<UUID, List<String>> getMemberSaveNames(UUID member, ServerType type, String task) {
-    Path src = this.serverTemplatePath.resolve(type.getShortName()).resolve(task);
-
-    HashMap<UUID, List<String>> serverNamesByOwnerUuid = new HashMap<>();
-
-    for (Map.Entry<UUID, List<String>> entry : this.getAllPlayerServerNames(type, task).entrySet()) {
-      UUID uuid = entry.getKey();
-      for (String serverName : entry.getValue()) {
-        Toml toml;
-        try {
-          toml =
-              new Toml().read(src.resolve(uuid.toString()).resolve(serverName).resolve(OWN_SERVER_INFO_FILE_NAME).toFile());
-        } catch (IllegalStateException e) {
-          continue;
-        }
-
-        List<String> memberUuidStrings = toml.getList(OWN_SERVER_MEMBER_UUIDS);
-
-        if (memberUuidStrings != null && memberUuidStrings.contains(member.toString())) {
-          serverNamesByOwnerUuid.computeIfAbsent(uuid, uuid1 -> new LinkedList<>()).add(serverName);
-        }
-      }
-    }
-
-    return serverNamesByOwnerUuid;
-  }
-
-  private Map<UUID, List<String>> getAllPlayerServerNames(ServerType type, String task) {
-    Path src = this.serverTemplatePath.resolve(type.getShortName()).resolve(task);
-
-    String[] playerFiles = src.toFile().list();
-    if (playerFiles == null) {
-      return Map.of();
-    }
-
-    HashMap<UUID, List<String>> serverNamesByOwnerUuid = new HashMap<>();
-
-    for (String playerFile : playerFiles) {
-      UUID uuid;
-      try {
-        uuid = UUID.fromString(playerFile);
-      } catch (IllegalArgumentException e) {
-        continue;
-      }
-
-      Path playerPath = src.resolve(playerFile);
-
-      String[] serverNames = playerPath.toFile().list();
-      if (serverNames == null) {
-        continue;
-      }
-
-      serverNamesByOwnerUuid.put(uuid, List.of(serverNames));
-    }
-
-    return serverNamesByOwnerUuid;
+    return this.saveIndex.getMemberSaveNames(member, type, task);
   }
 
-
   @Override
   public List<UUID> getPrivateSaveMembers(UUID uuid, ServerType type, String task, String exactName) {
-    File config = this.serverTemplatePath.resolve(type.getShortName()).resolve(task)
-        .resolve(uuid.toString()).resolve(exactName).resolve(OWN_SERVER_INFO_FILE_NAME)
-        .toFile();
-
-    if (!config.exists()) {
-      return List.of();
-    }
-
-    Toml toml;
-    try {
-      toml = new Toml().read(config);
-    } catch (IllegalStateException e) {
-      return List.of();
-    }
-
-    List<String> memberUuidStrings = toml.getList(OWN_SERVER_MEMBER_UUIDS);
-    return memberUuidStrings != null ? memberUuidStrings.stream().map(UUID::fromString).toList() : List.of();
+    return this.saveIndex.getMembers(uuid, type, task, exactName);
   }
 
   @Override
@@ -510,64 +1089,39 @@ public class NetworkUtils implements Network {
           e.getMessage());
       return false;
     }
-    File infoFile = new File(path.toFile(), OWN_SERVER_INFO_FILE_NAME);
-
-    if (!infoFile.exists()) {
-      try {
-        infoFile.createNewFile();
-      } catch (IOException e) {
-        this.logger.warn("Failed to create server info file for server {} {} {}: {}", uuid, task, exactName,
-            e.getMessage());
-        return false;
-      }
-    }
-
-    TomlWriter tomlWriter = new TomlWriter();
-
     try {
-      tomlWriter.write(Map.of(OWN_SERVER_MEMBER_UUIDS, memberUuids.stream().map(UUID::toString).toList()), infoFile);
+      this.saveInfoStore.update(path, info -> info.put(OWN_SERVER_MEMBER_UUIDS,
+          memberUuids.stream().map(UUID::toString).toList()));
     } catch (IOException e) {
       this.logger.warn("Failed to write into server info file for server {} {} {}: {}", uuid, task, exactName,
           e.getMessage());
 
       return false;
     }
+
+    this.saveIndex.update(uuid, type, task, exactName, memberUuids);
     return true;
   }
 
   @Override
   public void copyServerFromTemplate(NetworkServerInfo info) throws IOException {
     Path dest = this.networkPath.resolve(SERVERS).resolve(info.getName());
-    this.copyServerFromTemplate(info.getType(), info.getTask(), dest);
+    TemplateCopyType copyType = info instanceof NetworkServer server ?
+        server.getOptions().getTemplateCopyType() : TemplateCopyType.COPY;
+    this.copyServerFromTemplate(info.getType(), info.getTask(), dest, copyType);
   }
 
-  private void copyServerFromTemplate(ServerType type, String task, Path dest) throws IOException {
-    Path src = this.serverTemplatePath.toAbsolutePath();
-
-    // from base
-    FileUtils.copyDirectory(src.resolve(BASIS_DIRECTORY).toFile(), dest.toFile());
-
-    if (src.resolve(type.getShortName()).toFile().exists()) {
-      src = src.resolve(type.getShortName());
-      // from type base
-      if (src.resolve(BASIS_DIRECTORY).toFile().exists()) {
-        FileUtils.copyDirectory(src.resolve(BASIS_DIRECTORY).toFile(), dest.toFile());
-      }
-      if (task != null && src.resolve(task).toFile().exists()) {
-        src = src.resolve(task);
-        if (src.resolve(DEFAULT_DIRECTORY).toFile().exists()) {
-          src = src.resolve(DEFAULT_DIRECTORY);
-        }
-      } else if (src.resolve(DEFAULT_DIRECTORY).toFile().exists()) {
-        src = src.resolve(DEFAULT_DIRECTORY);
-      } else {
-        src = this.serverTemplatePath.resolve(DEFAULT_DIRECTORY);
-      }
-    } else {
-      src = src.resolve(DEFAULT_DIRECTORY);
-    }
+  private void copyServerFromTemplate(ServerType type, String task, Path dest, TemplateCopyType copyType)
+      throws IOException {
+    this.copyServerFromTemplate(this.templateManifestCache.get(type, task), dest, copyType);
+  }
 
-    FileUtils.copyDirectory(src.toFile(), dest.toFile());
+  private void copyServerFromTemplate(TemplateManifest manifest, Path dest, TemplateCopyType copyType)
+      throws IOException {
+    FileCopier copier = this.templateFileCache != null ? this.fileCopier.withFileCache(this.templateFileCache)
+        : this.fileCopier;
+    FileCopier.Result result = manifest.copyTo(dest, copyType, copier);
+    this.metrics.recordCopy(result.files(), result.bytes());
   }
 
   private void copyServerFromPlayerTemplate(ServerType type, String task, Path dest) throws IOException {
@@ -575,4 +1129,27 @@ public class NetworkUtils implements Network {
     FileUtils.copyDirectory(src.toFile(), dest.toFile());
   }
 
+  private WorldSyncResult recordWorldSync(String operation, long start, WorldSyncResult result) {
+    if (result instanceof WorldSyncResult.Fail fail) {
+      this.metrics.recordFailure(operation, fail.getReason());
+    }
+    this.metrics.recordOperation(operation, Duration.ofNanos(System.nanoTime() - start), result.isSuccessful());
+    return result;
+  }
+
+  private ServerInitResult recordSaveInit(long start, ServerInitResult result) {
+    if (result instanceof ServerInitResult.Fail fail) {
+      this.metrics.recordFailure(NetworkMetrics.CREATE_SAVE, fail.getReason());
+    }
+    this.metrics.recordOperation(NetworkMetrics.CREATE_SAVE, Duration.ofNanos(System.nanoTime() - start),
+        result.isSuccessful());
+    return result;
+  }
+
+  /**
+   * Template state resolved once for a batch of servers with equal {@link ServerPool.Key}.
+   */
+  private record SharedTemplates(TemplateManifest manifest, List<String> worldNames) {
+
+  }
 }
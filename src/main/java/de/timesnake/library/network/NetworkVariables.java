@@ -5,10 +5,18 @@
 package de.timesnake.library.network;
 
 import de.timesnake.database.util.Database;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
-import java.util.HashMap;
-import java.util.List;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
 
+/**
+ * Network wide variables. Reads are served from an immutable snapshot, {@link #load()} fetches all
+ * keys and replaces the snapshot at once. With {@link #startRefresh(Duration)} the variables are
+ * reloaded periodically, listeners are notified of changed values.
+ */
 public class NetworkVariables {
 
   public static final String NETWORK_NAME = "network_name";
@@ -27,15 +35,42 @@ public class NetworkVariables {
       DISCORD_LINK, PATREON_LINK, YOUTUBE_LINK, DEFAULT_RESOURCE_PACK_LINK, DEFAULT_RESOURCE_PACK_HASH,
       PRIVACY_POLICY_LINK, COINS_NAME);
 
-  private final HashMap<String, String> variables = new HashMap<>();
+  private final Logger logger = LogManager.getLogger("network-utils");
+
+  private volatile Map<String, String> variables = Map.of();
+  private final List<ChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+  private ScheduledExecutorService refreshExecutor;
 
   public NetworkVariables() {
 
   }
 
   public void load() {
+    Map<String, String> variables = this.fetch();
+    Map<String, String> previous;
+
+    synchronized (this) {
+      previous = this.variables;
+      this.variables = variables;
+    }
+
+    if (previous.isEmpty()) {
+      return;
+    }
+
     for (String key : KEYS) {
-      this.variables.put(key, Database.getNetwork().getValue(key));
+      String oldValue = previous.get(key);
+      String newValue = variables.get(key);
+      if (!Objects.equals(oldValue, newValue)) {
+        for (ChangeListener listener : this.listeners) {
+          try {
+            listener.onChange(key, oldValue, newValue);
+          } catch (RuntimeException e) {
+            this.logger.warn("Network variable listener failed for {}: {}", key, e.getMessage());
+          }
+        }
+      }
     }
   }
 
@@ -43,4 +78,56 @@ public class NetworkVariables {
     return this.variables.get(key);
   }
 
+  /**
+   * Reloads the variables every ttl in the background, replacing a previous refresh.
+   */
+  public synchronized void startRefresh(Duration ttl) {
+    this.stopRefresh();
+    this.refreshExecutor = Executors.newSingleThreadScheduledExecutor(
+        Thread.ofPlatform().name("network-variables").daemon().factory());
+    this.refreshExecutor.scheduleWithFixedDelay(() -> {
+      try {
+        this.load();
+      } catch (RuntimeException e) {
+        this.logger.warn("Failed to refresh network variables: {}", e.getMessage());
+      }
+    }, ttl.toMillis(), ttl.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  public synchronized void stopRefresh() {
+    if (this.refreshExecutor != null) {
+      this.refreshExecutor.shutdownNow();
+      this.refreshExecutor = null;
+    }
+  }
+
+  /**
+   * Adds a listener called after a reload for every changed variable.
+   */
+  public void addListener(ChangeListener listener) {
+    this.listeners.add(listener);
+  }
+
+  public void removeListener(ChangeListener listener) {
+    this.listeners.remove(listener);
+  }
+
+  /**
+   * Fetches the keys one after another, the database client is not known to be thread-safe. It only
+   * looks up single values, so a load costs one query per key until it offers reading all network
+   * values at once.
+   */
+  private Map<String, String> fetch() {
+    Map<String, String> variables = new HashMap<>();
+    for (String key : KEYS) {
+      variables.put(key, Database.getNetwork().getValue(key));
+    }
+    return Collections.unmodifiableMap(variables);
+  }
+
+  @FunctionalInterface
+  public interface ChangeListener {
+
+    void onChange(String key, String oldValue, String newValue);
+  }
 }
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2023 timesnake
+ */
+
+package de.timesnake.library.network;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.EnumMap;
+
+/**
+ * Measures the phases of one server creation and reports them to the {@link NetworkMetrics}.
+ */
+class PhaseTimer {
+
+  private final NetworkMetrics metrics;
+  private final String operation;
+  private final long start = System.nanoTime();
+  private final EnumMap<NetworkMetrics.Phase, Duration> durations = new EnumMap<>(NetworkMetrics.Phase.class);
+  private long lap = start;
+
+  PhaseTimer(NetworkMetrics metrics, String operation) {
+    this.metrics = metrics;
+    this.operation = operation;
+  }
+
+  /**
+   * Ends the current phase, the next phase starts now.
+   */
+  void lap(NetworkMetrics.Phase phase) {
+    long now = System.nanoTime();
+    Duration duration = Duration.ofNanos(now - this.lap);
+    this.lap = now;
+    this.durations.merge(phase, duration, Duration::plus);
+    this.metrics.recordPhase(this.operation, phase, duration);
+  }
+
+  ServerCreationResult success(Path serverPath) {
+    this.metrics.recordOperation(this.operation, Duration.ofNanos(System.nanoTime() - this.start), true,
+        this.durations);
+    return new ServerCreationResult.Success(serverPath, Collections.unmodifiableMap(this.durations));
+  }
+
+  ServerCreationResult.Fail fail(String reason) {
+    this.metrics.recordFailure(this.operation, reason);
+    this.metrics.recordOperation(this.operation, Duration.ofNanos(System.nanoTime() - this.start), false,
+        this.durations);
+    return new ServerCreationResult.Fail(reason);
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2023 timesnake
+ */
+
+package de.timesnake.library.network;
+
+import com.moandjiezana.toml.Toml;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static de.timesnake.library.network.Network.WORLD_BOUNDS_FILE_NAME;
+
+/**
+ * Filters the files of a world for copying. Anvil region files without populated chunks are skipped,
+ * as are region files outside the chunk bounds of the world, if the world has a bounds file.
+ * <p>
+ * The bounds file {@value Network#WORLD_BOUNDS_FILE_NAME} in the world directory contains the keys
+ * {@code min_chunk_x}, {@code min_chunk_z}, {@code max_chunk_x} and {@code max_chunk_z}, all
+ * inclusive. It applies to all dimensions and is not copied itself.
+ */
+public class RegionFilter implements Predicate<Path> {
+
+  public static final String MIN_CHUNK_X = "min_chunk_x";
+  public static final String MIN_CHUNK_Z = "min_chunk_z";
+  public static final String MAX_CHUNK_X = "max_chunk_x";
+  public static final String MAX_CHUNK_Z = "max_chunk_z";
+
+  private static final Pattern REGION_FILE_NAME = Pattern.compile("r\\.(-?\\d+)\\.(-?\\d+)\\.mca");
+
+  private static final int REGION_CHUNKS = 32;
+  private static final int HEADER_SIZE = 4096;
+
+  private static final Logger LOGGER = LogManager.getLogger("network-utils");
+
+  /**
+   * Creates a filter for the world, reading its bounds file if present.
+   */
+  public static RegionFilter forWorld(Path worldDir) {
+    Path boundsFile = worldDir.resolve(WORLD_BOUNDS_FILE_NAME);
+    if (!Files.isRegularFile(boundsFile)) {
+      return new RegionFilter(null);
+    }
+
+    try {
+      Toml toml = new Toml().read(boundsFile.toFile());
+      Long minX = toml.getLong(MIN_CHUNK_X);
+      Long minZ = toml.getLong(MIN_CHUNK_Z);
+      Long maxX = toml.getLong(MAX_CHUNK_X);
+      Long maxZ = toml.getLong(MAX_CHUNK_Z);
+      if (minX == null || minZ == null || maxX == null || maxZ == null) {
+        LOGGER.warn("Incomplete world bounds file {}, ignoring bounds", boundsFile);
+        return new RegionFilter(null);
+      }
+      return new RegionFilter(new Bounds(minX, minZ, maxX, maxZ));
+    } catch (RuntimeException e) {
+      LOGGER.warn("Failed to read world bounds file {}: {}", boundsFile, e.getMessage());
+      return new RegionFilter(null);
+    }
+  }
+
+  private final Bounds bounds;
+
+  /**
+   * @param bounds chunk bounds to copy regions within, null for all regions
+   */
+  public RegionFilter(Bounds bounds) {
+    this.bounds = bounds;
+  }
+
+  public Bounds getBounds() {
+    return bounds;
+  }
+
+  /**
+   * @return true if the file should be copied
+   */
+  @Override
+  public boolean test(Path file) {
+    String fileName = file.getFileName().toString();
+    if (fileName.equals(WORLD_BOUNDS_FILE_NAME)) {
+      return false;
+    }
+
+    Matcher matcher = REGION_FILE_NAME.matcher(fileName);
+    if (!matcher.matches()) {
+      return true;
+    }
+
+    if (this.bounds != null && !this.bounds.containsRegion(Long.parseLong(matcher.group(1)),
+        Long.parseLong(matcher.group(2)))) {
+      return false;
+    }
+
+    try {
+      return hasChunks(file);
+    } catch (IOException e) {
+      // copy if unsure
+      return true;
+    }
+  }
+
+  /**
+   * Reads the location table of the region file header, a chunk is present if its entry is not zero.
+   */
+  public static boolean hasChunks(Path regionFile) throws IOException {
+    try (FileChannel channel = FileChannel.open(regionFile, StandardOpenOption.READ)) {
+      if (channel.size() < HEADER_SIZE) {
+        return false;
+      }
+
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      while (header.hasRemaining()) {
+        if (channel.read(header) < 0) {
+          break;
+        }
+      }
+      header.flip();
+
+      while (header.remaining() >= Integer.BYTES) {
+        if (header.getInt() != 0) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Inclusive chunk bounds.
+   */
+  public record Bounds(long minChunkX, long minChunkZ, long maxChunkX, long maxChunkZ) {
+
+    public boolean containsRegion(long regionX, long regionZ) {
+      long minX = regionX * REGION_CHUNKS;
+      long minZ = regionZ * REGION_CHUNKS;
+      return minX <= this.maxChunkX && minX + REGION_CHUNKS - 1 >= this.minChunkX
+          && minZ <= this.maxChunkZ && minZ + REGION_CHUNKS - 1 >= this.minChunkZ;
+    }
+  }
+}
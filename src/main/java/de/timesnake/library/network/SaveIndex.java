@@ -0,0 +1,409 @@
+/*
+ * Copyright (C) 2023 timesnake
+ */
+
+package de.timesnake.library.network;
+
+import com.moandjiezana.toml.Toml;
+import de.timesnake.library.basic.util.ServerType;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static de.timesnake.library.network.Network.OWN_SERVER_INFO_FILE_NAME;
+import static de.timesnake.library.network.Network.OWN_SERVER_MEMBER_UUIDS;
+
+/**
+ * In-memory index of private save members per type and task. The index of a task is loaded on first
+ * access from a snapshot file, only saves whose info file changed since the snapshot are parsed again.
+ * <p>
+ * Every update writes a new random stamp into the stamp file of the task. An index whose stamp differs
+ * from the file, e.g. after an update by another process, is loaded again on the next read.
+ */
+public class SaveIndex {
+
+  public static final String SNAPSHOT_FILE_EXTENSION = ".dat";
+  public static final String STAMP_FILE_EXTENSION = ".stamp";
+
+  private static final int SNAPSHOT_VERSION = 1;
+
+  // file locks are held per JVM, so is this lock
+  private static final ReentrantLock STAMP_LOCK = new ReentrantLock();
+
+  private final Logger logger = LogManager.getLogger("network-utils");
+
+  private final Path serverTemplatePath;
+  private final Path snapshotPath;
+  private final Map<String, TaskIndex> indexByKey = new ConcurrentHashMap<>();
+
+  /**
+   * @param snapshotPath directory to store the index snapshots in
+   */
+  public SaveIndex(Path serverTemplatePath, Path snapshotPath) {
+    this.serverTemplatePath = serverTemplatePath;
+    this.snapshotPath = snapshotPath;
+  }
+
+  /**
+   * Returns the indexed saves of the member. Saves deleted since indexing, e.g. by another process,
+   * are dropped from the index.
+   */
+  public Map<UUID, List<String>> getMemberSaveNames(UUID member, ServerType type, String task) {
+    TaskIndex index = this.getTaskIndex(type, task);
+    Map<UUID, List<String>> saveNamesByOwner = index.getMemberSaveNames(member);
+
+    for (Iterator<Map.Entry<UUID, List<String>>> it = saveNamesByOwner.entrySet().iterator(); it.hasNext(); ) {
+      Map.Entry<UUID, List<String>> entry = it.next();
+      Path ownerPath = index.path.resolve(entry.getKey().toString());
+      entry.getValue().removeIf(name -> {
+        if (Files.isDirectory(ownerPath.resolve(name))) {
+          return false;
+        }
+        index.remove(new SaveKey(entry.getKey(), name));
+        return true;
+      });
+      if (entry.getValue().isEmpty()) {
+        it.remove();
+      }
+    }
+    return saveNamesByOwner;
+  }
+
+  /**
+   * Returns the indexed members, the entry is read again if the info file changed since, e.g. by
+   * another process.
+   */
+  public List<UUID> getMembers(UUID owner, ServerType type, String task, String name) {
+    TaskIndex index = this.getTaskIndex(type, task);
+    SaveKey key = new SaveKey(owner, name);
+    Path infoFile = index.path.resolve(owner.toString()).resolve(name).resolve(OWN_SERVER_INFO_FILE_NAME);
+    long lastModified = lastModified(infoFile);
+
+    SaveEntry entry = index.get(key);
+    if (entry != null ? entry.lastModified() != lastModified : lastModified >= 0) {
+      entry = new SaveEntry(lastModified, readMembers(infoFile, lastModified));
+      index.put(key, entry);
+    }
+    return entry != null ? entry.members() : List.of();
+  }
+
+  /**
+   * Updates the members of a save after its info file has been written.
+   */
+  public void update(UUID owner, ServerType type, String task, String name, List<UUID> members) {
+    TaskIndex index = this.getTaskIndex(type, task);
+    try {
+      if (!this.renewStamp(index)) {
+        // changed by another process, load everything again
+        this.invalidate(type, task);
+        return;
+      }
+    } catch (IOException e) {
+      this.logger.warn("Failed to write save index stamp {}: {}", index.stampFile, e.getMessage());
+      this.invalidate(type, task);
+      return;
+    }
+
+    long lastModified = lastModified(index.path.resolve(owner.toString()).resolve(name)
+        .resolve(OWN_SERVER_INFO_FILE_NAME));
+    index.put(new SaveKey(owner, name), new SaveEntry(lastModified, List.copyOf(members)));
+    index.writeSnapshot();
+  }
+
+  public void invalidate(ServerType type, String task) {
+    this.indexByKey.remove(type.getShortName() + "/" + task);
+  }
+
+  private TaskIndex getTaskIndex(ServerType type, String task) {
+    String key = type.getShortName() + "/" + task;
+    Path snapshotDir = this.snapshotPath.resolve(type.getShortName());
+    TaskIndex index = this.indexByKey.computeIfAbsent(key,
+        k -> this.load(this.serverTemplatePath.resolve(type.getShortName()).resolve(task),
+            snapshotDir.resolve(task + SNAPSHOT_FILE_EXTENSION), snapshotDir.resolve(task + STAMP_FILE_EXTENSION)));
+
+    if (index.stamp != readStamp(index.stampFile)) {
+      TaskIndex loaded = this.load(index.path, index.snapshotFile, index.stampFile);
+      this.indexByKey.replace(key, index, loaded);
+      return loaded;
+    }
+    return index;
+  }
+
+  /**
+   * Replaces the stamp of the task by a new random one, the index takes it if it was up to date.
+   *
+   * @return false if the index was outdated
+   */
+  private boolean renewStamp(TaskIndex index) throws IOException {
+    Files.createDirectories(index.stampFile.getParent());
+    STAMP_LOCK.lock();
+    try (FileChannel channel = FileChannel.open(index.stampFile, StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE);
+         FileLock ignored = channel.lock()) {
+      ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+      long previous = channel.read(buffer, 0) == Long.BYTES ? buffer.flip().getLong() : 0;
+
+      long stamp = ThreadLocalRandom.current().nextLong();
+      buffer.clear().putLong(stamp).flip();
+      channel.write(buffer, 0);
+
+      if (previous != index.stamp) {
+        return false;
+      }
+      index.stamp = stamp;
+      return true;
+    } finally {
+      STAMP_LOCK.unlock();
+    }
+  }
+
+  private static long readStamp(Path stampFile) {
+    try (FileChannel channel = FileChannel.open(stampFile, StandardOpenOption.READ)) {
+      ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+      return channel.read(buffer, 0) == Long.BYTES ? buffer.flip().getLong() : 0;
+    } catch (IOException e) {
+      return 0;
+    }
+  }
+
+  private TaskIndex load(Path taskPath, Path snapshotFile, Path stampFile) {
+    TaskIndex index = new TaskIndex(taskPath, snapshotFile, stampFile);
+    // read before the saves, a concurrent update is detected on the next read
+    index.stamp = readStamp(stampFile);
+    Map<SaveKey, SaveEntry> snapshot = this.readSnapshot(snapshotFile);
+
+    String[] ownerFiles = taskPath.toFile().list();
+    if (ownerFiles == null) {
+      return index;
+    }
+
+    boolean changed = false;
+
+    for (String ownerFile : ownerFiles) {
+      UUID owner;
+      try {
+        owner = UUID.fromString(ownerFile);
+      } catch (IllegalArgumentException e) {
+        continue;
+      }
+
+      String[] saveNames = taskPath.resolve(ownerFile).toFile().list();
+      if (saveNames == null) {
+        continue;
+      }
+
+      for (String saveName : saveNames) {
+        SaveKey key = new SaveKey(owner, saveName);
+        Path infoFile = taskPath.resolve(ownerFile).resolve(saveName).resolve(OWN_SERVER_INFO_FILE_NAME);
+        long lastModified = lastModified(infoFile);
+
+        SaveEntry entry = snapshot.get(key);
+        if (entry == null || entry.lastModified() != lastModified) {
+          entry = new SaveEntry(lastModified, readMembers(infoFile, lastModified));
+          changed = true;
+        }
+        index.put(key, entry);
+      }
+    }
+
+    if (changed || index.size() != snapshot.size()) {
+      index.writeSnapshot();
+    }
+
+    return index;
+  }
+
+  private static long lastModified(Path file) {
+    try {
+      return Files.getLastModifiedTime(file).toMillis();
+    } catch (IOException e) {
+      return -1;
+    }
+  }
+
+  private static List<UUID> readMembers(Path infoFile, long lastModified) {
+    if (lastModified < 0) {
+      return List.of();
+    }
+
+    Toml toml;
+    try {
+      toml = new Toml().read(infoFile.toFile());
+    } catch (IllegalStateException e) {
+      return List.of();
+    }
+
+    List<String> memberUuidStrings = toml.getList(OWN_SERVER_MEMBER_UUIDS);
+    if (memberUuidStrings == null) {
+      return List.of();
+    }
+
+    List<UUID> members = new ArrayList<>(memberUuidStrings.size());
+    for (String memberUuidString : memberUuidStrings) {
+      try {
+        members.add(UUID.fromString(memberUuidString));
+      } catch (IllegalArgumentException ignored) {
+      }
+    }
+    return List.copyOf(members);
+  }
+
+  private Map<SaveKey, SaveEntry> readSnapshot(Path file) {
+    Map<SaveKey, SaveEntry> entries = new HashMap<>();
+
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      if (in.readInt() != SNAPSHOT_VERSION) {
+        return Map.of();
+      }
+
+      int size = in.readInt();
+      for (int i = 0; i < size; i++) {
+        UUID owner = new UUID(in.readLong(), in.readLong());
+        String name = in.readUTF();
+        long lastModified = in.readLong();
+        int memberCount = in.readInt();
+        List<UUID> members = new ArrayList<>(memberCount);
+        for (int j = 0; j < memberCount; j++) {
+          members.add(new UUID(in.readLong(), in.readLong()));
+        }
+        entries.put(new SaveKey(owner, name), new SaveEntry(lastModified, List.copyOf(members)));
+      }
+    } catch (NoSuchFileException e) {
+      return Map.of();
+    } catch (IOException e) {
+      this.logger.warn("Failed to read save index {}: {}", file, e.getMessage());
+      return Map.of();
+    }
+
+    return entries;
+  }
+
+  private record SaveKey(UUID owner, String name) {
+
+  }
+
+  private record SaveEntry(long lastModified, List<UUID> members) {
+
+  }
+
+  private class TaskIndex {
+
+    private final Path path;
+    private final Path snapshotFile;
+    private final Path stampFile;
+    private volatile long stamp;
+    private final Map<SaveKey, SaveEntry> entryByKey = new HashMap<>();
+    private final Map<UUID, Map<UUID, Set<String>>> saveNamesByOwnerByMember = new HashMap<>();
+
+    private TaskIndex(Path path, Path snapshotFile, Path stampFile) {
+      this.path = path;
+      this.snapshotFile = snapshotFile;
+      this.stampFile = stampFile;
+    }
+
+    private synchronized void put(SaveKey key, SaveEntry entry) {
+      this.removeMembers(key, this.entryByKey.put(key, entry));
+
+      for (UUID member : entry.members()) {
+        this.saveNamesByOwnerByMember.computeIfAbsent(member, m -> new HashMap<>())
+            .computeIfAbsent(key.owner(), o -> new TreeSet<>()).add(key.name());
+      }
+    }
+
+    private synchronized void remove(SaveKey key) {
+      this.removeMembers(key, this.entryByKey.remove(key));
+    }
+
+    private void removeMembers(SaveKey key, SaveEntry previous) {
+      if (previous != null) {
+        for (UUID member : previous.members()) {
+          Map<UUID, Set<String>> saveNamesByOwner = this.saveNamesByOwnerByMember.get(member);
+          if (saveNamesByOwner != null) {
+            Set<String> saveNames = saveNamesByOwner.get(key.owner());
+            if (saveNames != null && saveNames.remove(key.name()) && saveNames.isEmpty()) {
+              saveNamesByOwner.remove(key.owner());
+            }
+            if (saveNamesByOwner.isEmpty()) {
+              this.saveNamesByOwnerByMember.remove(member);
+            }
+          }
+        }
+      }
+    }
+
+    private synchronized int size() {
+      return this.entryByKey.size();
+    }
+
+    private synchronized Map<UUID, List<String>> getMemberSaveNames(UUID member) {
+      Map<UUID, Set<String>> saveNamesByOwner = this.saveNamesByOwnerByMember.get(member);
+      if (saveNamesByOwner == null) {
+        return new HashMap<>();
+      }
+
+      HashMap<UUID, List<String>> result = new HashMap<>();
+      saveNamesByOwner.forEach((owner, saveNames) -> result.put(owner, new LinkedList<>(saveNames)));
+      return result;
+    }
+
+    private synchronized SaveEntry get(SaveKey key) {
+      return this.entryByKey.get(key);
+    }
+
+    private synchronized void writeSnapshot() {
+      Path file = this.snapshotFile;
+      Path tmpFile;
+
+      // unique per writer, other processes may write the snapshot of the task concurrently
+      try {
+        Files.createDirectories(file.getParent());
+        tmpFile = Files.createTempFile(file.getParent(), file.getFileName() + ".", ".tmp");
+      } catch (IOException e) {
+        logger.warn("Failed to write save index {}: {}", file, e.getMessage());
+        return;
+      }
+
+      try {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpFile)))) {
+          this.writeEntries(out);
+        }
+        Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } catch (IOException e) {
+        logger.warn("Failed to write save index {}: {}", file, e.getMessage());
+        try {
+          Files.deleteIfExists(tmpFile);
+        } catch (IOException ignored) {
+        }
+      }
+    }
+
+    private void writeEntries(DataOutputStream out) throws IOException {
+      out.writeInt(SNAPSHOT_VERSION);
+      out.writeInt(this.entryByKey.size());
+      for (Map.Entry<SaveKey, SaveEntry> entry : this.entryByKey.entrySet()) {
+        out.writeLong(entry.getKey().owner().getMostSignificantBits());
+        out.writeLong(entry.getKey().owner().getLeastSignificantBits());
+        out.writeUTF(entry.getKey().name());
+        out.writeLong(entry.getValue().lastModified());
+        out.writeInt(entry.getValue().members().size());
+        for (UUID member : entry.getValue().members()) {
+          out.writeLong(member.getMostSignificantBits());
+          out.writeLong(member.getLeastSignificantBits());
+        }
+      }
+    }
+  }
+}
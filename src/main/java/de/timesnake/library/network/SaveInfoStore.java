@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2023 timesnake
+ */
+
+package de.timesnake.library.network;
+
+import com.moandjiezana.toml.Toml;
+import com.moandjiezana.toml.TomlWriter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import static de.timesnake.library.network.Network.OWN_SERVER_INFO_FILE_NAME;
+
+/**
+ * Reads and updates the info files of saves. Updates of a save are serialized by a striped lock
+ * within the process and a file lock across processes, they merge into the current content and
+ * replace the info file atomically.
+ */
+public class SaveInfoStore {
+
+  public static final String LOCK_FILE_EXTENSION = ".lock";
+
+  private static final int STRIPES = 64;
+
+  // file locks are held per JVM, so are the stripes
+  private static final ReentrantLock[] LOCKS = new ReentrantLock[STRIPES];
+
+  static {
+    for (int i = 0; i < STRIPES; i++) {
+      LOCKS[i] = new ReentrantLock();
+    }
+  }
+
+  private final Logger logger = LogManager.getLogger("network-utils");
+
+  private final Path serverTemplatePath;
+  private final Path locksPath;
+
+  /**
+   * @param locksPath directory to create the lock files in, outside the saves to not copy them into
+   *                  servers
+   */
+  public SaveInfoStore(Path serverTemplatePath, Path locksPath) {
+    this.serverTemplatePath = serverTemplatePath;
+    this.locksPath = locksPath;
+  }
+
+  /**
+   * @return the content of the info file, empty if the file does not exist
+   */
+  public Map<String, Object> read(Path saveDir) {
+    Path infoFile = saveDir.resolve(OWN_SERVER_INFO_FILE_NAME);
+    if (!Files.isRegularFile(infoFile)) {
+      return new HashMap<>();
+    }
+
+    try {
+      return new HashMap<>(new Toml().read(infoFile.toFile()).toMap());
+    } catch (IllegalStateException e) {
+      this.logger.warn("Failed to read server info file {}: {}", infoFile, e.getMessage());
+      return new HashMap<>();
+    }
+  }
+
+  /**
+   * Applies the change to the current content of the info file and writes it. Keys not touched by the
+   * change are kept.
+   *
+   * @return the written content
+   */
+  public Map<String, Object> update(Path saveDir, Consumer<Map<String, Object>> change) throws IOException {
+    ReentrantLock lock = LOCKS[Math.floorMod(saveDir.toAbsolutePath().normalize().hashCode(), STRIPES)];
+    lock.lock();
+    try (FileChannel lockChannel = FileChannel.open(this.getLockFile(saveDir), StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE);
+         FileLock ignored = lockChannel.lock()) {
+      Map<String, Object> info = this.read(saveDir);
+      change.accept(info);
+
+      Path infoFile = saveDir.resolve(OWN_SERVER_INFO_FILE_NAME);
+      Path tmpFile = infoFile.resolveSibling(OWN_SERVER_INFO_FILE_NAME + ".tmp");
+      new TomlWriter().write(info, tmpFile.toFile());
+      try {
+        Files.move(tmpFile, infoFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } catch (IOException e) {
+        Files.deleteIfExists(tmpFile);
+        throw e;
+      }
+      return info;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private Path getLockFile(Path saveDir) throws IOException {
+    Path relative = this.serverTemplatePath.toAbsolutePath().normalize()
+        .relativize(saveDir.toAbsolutePath().normalize());
+    Path lockFile = this.locksPath.resolve(relative.toString() + LOCK_FILE_EXTENSION);
+    Files.createDirectories(lockFile.getParent());
+    return lockFile;
+  }
+}
@@ -5,6 +5,8 @@
 package de.timesnake.library.network;
 
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
 
 public interface ServerCreationResult {
 
@@ -13,15 +15,25 @@ public interface ServerCreationResult {
   class Success implements ServerCreationResult {
 
     private final Path serverPath;
+    private final Map<NetworkMetrics.Phase, Duration> phaseDurations;
 
     public Success(Path serverPath) {
+      this(serverPath, Map.of());
+    }
+
+    public Success(Path serverPath, Map<NetworkMetrics.Phase, Duration> phaseDurations) {
       this.serverPath = serverPath;
+      this.phaseDurations = phaseDurations;
     }
 
     public Path getServerPath() {
       return serverPath;
     }
 
+    public Map<NetworkMetrics.Phase, Duration> getPhaseDurations() {
+      return phaseDurations;
+    }
+
     @Override
     public boolean isSuccessful() {
       return true;
@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2023 timesnake
+ */
+
+package de.timesnake.library.network;
+
+import de.timesnake.library.basic.util.ServerType;
+import de.timesnake.library.network.NetworkServer.CopyType;
+import de.timesnake.library.network.NetworkServer.TemplateCopyType;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps provisioned server directories (templates and worlds, without configs and logs) ready to be
+ * handed out to new servers. Each pool provisions into its own {@link InstanceDirectory}, created when
+ * pooling is enabled for the first key.
+ */
+public class ServerPool {
+
+  private final Logger logger = LogManager.getLogger("network-utils");
+
+  private final Path poolPath;
+  private final Provisioner provisioner;
+
+  private final Map<Key, Integer> sizeByKey = new ConcurrentHashMap<>();
+  private final Map<Key, ConcurrentLinkedDeque<Path>> readyByKey = new ConcurrentHashMap<>();
+  private final Map<Key, AtomicInteger> pendingByKey = new ConcurrentHashMap<>();
+
+  private final AtomicLong directoryCounter = new AtomicLong();
+  private final AtomicLong generation = new AtomicLong();
+
+  private final ExecutorService executor = Executors.newSingleThreadExecutor(
+      Thread.ofPlatform().name("server-pool").daemon().priority(Thread.MIN_PRIORITY).factory());
+
+  private InstanceDirectory directory;
+
+  public ServerPool(Path poolPath, Provisioner provisioner) {
+    this.poolPath = poolPath;
+    this.provisioner = provisioner;
+  }
+
+  /**
+   * Sets the number of ready server directories for the key, 0 disables pooling.
+   */
+  public void setSize(Key key, int size) {
+    if (size <= 0) {
+      this.sizeByKey.remove(key);
+      ConcurrentLinkedDeque<Path> ready = this.readyByKey.remove(key);
+      if (ready != null) {
+        ready.forEach(path -> this.executor.execute(() -> this.delete(path)));
+      }
+      return;
+    }
+
+    synchronized (this) {
+      if (this.directory == null) {
+        try {
+          // directories of dead pools are not tracked anymore
+          this.directory = InstanceDirectory.create(this.poolPath, path -> this.executor.execute(() -> this.delete(path)));
+        } catch (IOException e) {
+          this.logger.warn("Failed to create server pool directory in {}: {}", this.poolPath, e.getMessage());
+          return;
+        }
+      }
+    }
+
+    this.sizeByKey.put(key, size);
+    this.refill(key);
+  }
+
+  public int getSize(Key key) {
+    return this.sizeByKey.getOrDefault(key, 0);
+  }
+
+  public int getReadyCount(Key key) {
+    ConcurrentLinkedDeque<Path> ready = this.readyByKey.get(key);
+    return ready != null ? ready.size() : 0;
+  }
+
+  /**
+   * @return a provisioned directory owned by the caller, or null if none is ready
+   */
+  public Path take(Key key) {
+    if (!this.sizeByKey.containsKey(key)) {
+      return null;
+    }
+
+    ConcurrentLinkedDeque<Path> ready = this.readyByKey.get(key);
+    Path path = ready != null ? ready.pollFirst() : null;
+    this.refill(key);
+    return path;
+  }
+
+  /**
+   * Discards all ready directories and provisions them again, e.g. after a template change.
+   */
+  public void clear() {
+    this.generation.incrementAndGet();
+    for (ConcurrentLinkedDeque<Path> ready : this.readyByKey.values()) {
+      Path path;
+      while ((path = ready.pollFirst()) != null) {
+        Path finalPath = path;
+        this.executor.execute(() -> this.delete(finalPath));
+      }
+    }
+    this.sizeByKey.keySet().forEach(this::refill);
+  }
+
+  /**
+   * Stops provisioning and deletes all ready directories.
+   */
+  public synchronized void shutdown() {
+    this.sizeByKey.clear();
+    this.executor.shutdownNow();
+    try {
+      this.executor.awaitTermination(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    if (this.directory != null) {
+      this.delete(this.directory.getPath());
+      try {
+        this.directory.close();
+      } catch (IOException e) {
+        this.logger.warn("Failed to release server pool directory {}: {}", this.directory.getPath(), e.getMessage());
+      }
+      this.directory = null;
+    }
+  }
+
+  private void refill(Key key) {
+    int size = this.sizeByKey.getOrDefault(key, 0);
+    ConcurrentLinkedDeque<Path> ready = this.readyByKey.computeIfAbsent(key, k -> new ConcurrentLinkedDeque<>());
+    AtomicInteger pending = this.pendingByKey.computeIfAbsent(key, k -> new AtomicInteger());
+
+    while (true) {
+      int current = pending.get();
+      if (ready.size() + current >= size) {
+        return;
+      }
+      if (pending.compareAndSet(current, current + 1)) {
+        this.executor.execute(() -> this.provision(key, ready, pending));
+      }
+    }
+  }
+
+  private void provision(Key key, ConcurrentLinkedDeque<Path> ready, AtomicInteger pending) {
+    long generation = this.generation.get();
+    Path path = this.directory.getPath().resolve(String.valueOf(this.directoryCounter.incrementAndGet()));
+
+    try {
+      Files.createDirectories(path);
+      this.provisioner.provision(key, path);
+    } catch (IOException e) {
+      this.logger.warn("Failed to provision pooled server for {} {}: {}", key.type().getShortName(), key.task(),
+          e.getMessage());
+      this.delete(path);
+      pending.decrementAndGet();
+      return;
+    }
+
+    if (generation != this.generation.get() || !this.sizeByKey.containsKey(key)) {
+      this.delete(path);
+      pending.decrementAndGet();
+      this.refill(key);
+      return;
+    }
+
+    ready.addLast(path);
+    pending.decrementAndGet();
+  }
+
+  private void delete(Path path) {
+    try {
+      NetworkFileUtils.deleteRecursively(path);
+    } catch (IOException e) {
+      this.logger.warn("Failed to delete pooled server {}: {}", path, e.getMessage());
+    }
+  }
+
+  @FunctionalInterface
+  public interface Provisioner {
+
+    void provision(Key key, Path dest) throws IOException;
+  }
+
+  /**
+   * Servers with equal keys can share pooled directories.
+   */
+  public record Key(ServerType type, String task, CopyType worldCopyType, TemplateCopyType templateCopyType) {
+
+    public static Key of(NetworkServer server) {
+      return new Key(server.getType(), server.getTask(), server.getOptions().getWorldCopyType(),
+          server.getOptions().getTemplateCopyType());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Key key
+          && this.type.getShortName().equals(key.type.getShortName())
+          && Objects.equals(this.task, key.task)
+          && this.worldCopyType == key.worldCopyType
+          && this.templateCopyType == key.templateCopyType;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(this.type.getShortName(), this.task, this.worldCopyType, this.templateCopyType);
+    }
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2023 timesnake
+ */
+
+package de.timesnake.library.network;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Removes server directories in two steps: the directory is renamed into the trash directory, which
+ * is constant time, and deleted afterward on a low priority background thread. Symlinks (synced
+ * worlds, logs, player data) are removed without following them.
+ */
+public class ServerTrash {
+
+  private final Logger logger = LogManager.getLogger("network-utils");
+
+  private final Path trashPath;
+  private final AtomicLong counter = new AtomicLong();
+
+  private final ExecutorService executor = Executors.newSingleThreadExecutor(
+      Thread.ofPlatform().name("server-trash").daemon().priority(Thread.MIN_PRIORITY).factory());
+
+  public ServerTrash(Path trashPath) {
+    this.trashPath = trashPath;
+
+    // leftovers of a previous run
+    String[] names = trashPath.toFile().list();
+    if (names != null) {
+      for (String name : names) {
+        this.executor.execute(() -> this.delete(this.trashPath.resolve(name)));
+      }
+    }
+  }
+
+  /**
+   * Moves the directory into the trash and schedules its deletion.
+   *
+   * @return false if the directory could not be moved
+   */
+  public boolean trash(Path directory) {
+    if (!Files.exists(directory, LinkOption.NOFOLLOW_LINKS)) {
+      return true;
+    }
+
+    Path trashed = this.trashPath.resolve(directory.getFileName() + "-" + System.currentTimeMillis() + "-"
+        + this.counter.incrementAndGet());
+    try {
+      Files.createDirectories(this.trashPath);
+      Files.move(directory, trashed, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      this.logger.warn("Failed to move {} to trash: {}", directory, e.getMessage());
+      return false;
+    }
+
+    try {
+      this.executor.execute(() -> this.delete(trashed));
+    } catch (RejectedExecutionException e) {
+      // shut down, deleted by the next instance
+    }
+    return true;
+  }
+
+  /**
+   * Stops deleting, directories left in the trash are deleted by the next instance.
+   */
+  public void shutdown() {
+    this.executor.shutdownNow();
+  }
+
+  private void delete(Path path) {
+    try {
+      NetworkFileUtils.deleteRecursively(path);
+    } catch (IOException e) {
+      this.logger.warn("Failed to delete {}: {}", path, e.getMessage());
+    }
+  }
+}
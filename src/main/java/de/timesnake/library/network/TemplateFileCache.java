@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2023 timesnake
+ */
+
+package de.timesnake.library.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Bounded off-heap cache of small template file contents, keyed by path and modification time. The
+ * least recently used files are evicted once the total size exceeds the limit. Files larger than
+ * the file size limit are never cached.
+ */
+public class TemplateFileCache {
+
+  private final long maxBytes;
+  private final long maxFileSize;
+
+  private final LinkedHashMap<Path, CachedFile> fileByPath = new LinkedHashMap<>(16, 0.75f, true);
+  private long bytes = 0;
+
+  private volatile NetworkMetrics metrics = NetworkMetrics.NO_OP;
+
+  /**
+   * @param maxBytes    maximum total size of all cached files
+   * @param maxFileSize maximum size of a single cached file
+   */
+  public TemplateFileCache(long maxBytes, long maxFileSize) {
+    this.maxBytes = maxBytes;
+    this.maxFileSize = Math.min(Math.min(maxFileSize, maxBytes), Integer.MAX_VALUE);
+  }
+
+  /**
+   * @return a read-only buffer with the current content of the file, or null if the file is too large
+   * to be cached
+   */
+  public ByteBuffer get(Path file) throws IOException {
+    CachedFile cached = this.lookup(file);
+    return cached != null ? cached.content().duplicate() : null;
+  }
+
+  /**
+   * Writes the cached content of the file to the destination, keeping the modification time.
+   *
+   * @return false if the file is too large to be cached and has to be copied by the caller
+   */
+  public boolean copy(Path src, Path dest) throws IOException {
+    CachedFile cached = this.lookup(src);
+    if (cached == null) {
+      return false;
+    }
+
+    ByteBuffer content = cached.content().duplicate();
+    Files.deleteIfExists(dest);
+    try (FileChannel out = FileChannel.open(dest, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+      while (content.hasRemaining()) {
+        out.write(content);
+      }
+    }
+    Files.setLastModifiedTime(dest, cached.lastModified());
+    FileCopier.copyPermissions(src, dest);
+    return true;
+  }
+
+  private CachedFile lookup(Path file) throws IOException {
+    BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+    if (attrs.size() > this.maxFileSize) {
+      return null;
+    }
+
+    synchronized (this) {
+      CachedFile cached = this.fileByPath.get(file);
+      if (cached != null && cached.lastModified().equals(attrs.lastModifiedTime())) {
+        this.metrics.recordCacheAccess(NetworkMetrics.TEMPLATE_FILE_CACHE, true);
+        return cached;
+      }
+    }
+
+    this.metrics.recordCacheAccess(NetworkMetrics.TEMPLATE_FILE_CACHE, false);
+
+    ByteBuffer content = read(file, attrs.size());
+    if (content == null) {
+      return null;
+    }
+
+    CachedFile cached = new CachedFile(attrs.lastModifiedTime(), content);
+    this.put(file, cached);
+    return cached;
+  }
+
+  public synchronized void clear() {
+    this.fileByPath.clear();
+    this.bytes = 0;
+  }
+
+  public synchronized long getSize() {
+    return bytes;
+  }
+
+  public synchronized int getFileCount() {
+    return this.fileByPath.size();
+  }
+
+  public void setMetrics(NetworkMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  private synchronized void put(Path file, CachedFile cachedFile) {
+    CachedFile previous = this.fileByPath.put(file, cachedFile);
+    if (previous != null) {
+      this.bytes -= previous.content().capacity();
+    }
+    this.bytes += cachedFile.content().capacity();
+
+    Iterator<CachedFile> iterator = this.fileByPath.values().iterator();
+    while (this.bytes > this.maxBytes && iterator.hasNext()) {
+      this.bytes -= iterator.next().content().capacity();
+      iterator.remove();
+    }
+  }
+
+  /**
+   * @return the content, or null if the file changed its size while reading
+   */
+  private static ByteBuffer read(Path file, long size) throws IOException {
+    ByteBuffer content = ByteBuffer.allocateDirect((int) size);
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      while (content.hasRemaining()) {
+        if (channel.read(content) < 0) {
+          return null;
+        }
+      }
+      if (channel.size() != size) {
+        return null;
+      }
+    }
+    return content.flip().asReadOnlyBuffer();
+  }
+
+  private record CachedFile(FileTime lastModified, ByteBuffer content) {
+
+  }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2023 timesnake
+ */
+
+package de.timesnake.library.network;
+
+import de.timesnake.library.basic.util.ServerType;
+import de.timesnake.library.network.NetworkServer.TemplateCopyType;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import static de.timesnake.library.network.Network.BASIS_DIRECTORY;
+import static de.timesnake.library.network.Network.DEFAULT_DIRECTORY;
+
+/**
+ * Flattened view of the layered server template (basis, type basis, task or default). Every
+ * relative path appears once with the file of the last layer providing it.
+ */
+public class TemplateManifest {
+
+  public static TemplateManifest resolve(Path serverTemplatePath, ServerType type, String task) throws IOException {
+    return resolve(serverTemplatePath, type, task, dir -> {}, dir -> {});
+  }
+
+  /**
+   * @param probeConsumer     receives every directory probed for layers, e.g. to watch it
+   * @param directoryConsumer receives every directory of the layers
+   */
+  public static TemplateManifest resolve(Path serverTemplatePath, ServerType type, String task,
+                                         Consumer<Path> probeConsumer, Consumer<Path> directoryConsumer)
+      throws IOException {
+    Path src = serverTemplatePath.toAbsolutePath();
+    List<Path> layers = resolveLayers(src, type, task, probeConsumer);
+
+    Map<Path, FileTime> directoryTimes = new LinkedHashMap<>();
+
+    Map<Path, Entry> entryByPath = new LinkedHashMap<>();
+    Set<Path> directories = new LinkedHashSet<>();
+
+    for (Path layer : layers) {
+      if (!Files.isDirectory(layer)) {
+        throw new FileNotFoundException("Source '" + layer + "' does not exist");
+      }
+
+      Files.walkFileTree(layer, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<>() {
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+          directoryConsumer.accept(dir);
+          directoryTimes.put(dir, attrs.lastModifiedTime());
+          directories.add(layer.relativize(dir));
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+          Path path = layer.relativize(file);
+          entryByPath.remove(path);
+          entryByPath.put(path, new Entry(path, file, attrs.size(), attrs.lastModifiedTime(), layer));
+          return FileVisitResult.CONTINUE;
+        }
+      });
+    }
+
+    return new TemplateManifest(() -> resolveLayers(src, type, task, dir -> {}), List.copyOf(layers),
+        List.copyOf(directories), List.copyOf(entryByPath.values()), Map.copyOf(directoryTimes));
+  }
+
+  private static List<Path> resolveLayers(Path src, ServerType type, String task, Consumer<Path> probeConsumer) {
+    List<Path> layers = new ArrayList<>();
+
+    probeConsumer.accept(src);
+
+    // from base
+    layers.add(src.resolve(BASIS_DIRECTORY));
+
+    Path typePath = src.resolve(type.getShortName());
+    if (Files.isDirectory(typePath)) {
+      probeConsumer.accept(typePath);
+      // from type base
+      if (Files.isDirectory(typePath.resolve(BASIS_DIRECTORY))) {
+        layers.add(typePath.resolve(BASIS_DIRECTORY));
+      }
+      if (task != null && Files.isDirectory(typePath.resolve(task))) {
+        Path taskPath = typePath.resolve(task);
+        probeConsumer.accept(taskPath);
+        layers.add(Files.isDirectory(taskPath.resolve(DEFAULT_DIRECTORY)) ?
+            taskPath.resolve(DEFAULT_DIRECTORY) : taskPath);
+      } else if (Files.isDirectory(typePath.resolve(DEFAULT_DIRECTORY))) {
+        layers.add(typePath.resolve(DEFAULT_DIRECTORY));
+      } else {
+        layers.add(src.resolve(DEFAULT_DIRECTORY));
+      }
+    } else {
+      layers.add(src.resolve(DEFAULT_DIRECTORY));
+    }
+
+    return layers;
+  }
+
+  private final Supplier<List<Path>> layerResolver;
+  private final List<Path> layers;
+  private final List<Path> directories;
+  private final List<Entry> entries;
+  private final Map<Path, FileTime> directoryTimes;
+
+  private TemplateManifest(Supplier<List<Path>> layerResolver, List<Path> layers, List<Path> directories,
+                           List<Entry> entries, Map<Path, FileTime> directoryTimes) {
+    this.layerResolver = layerResolver;
+    this.layers = layers;
+    this.directories = directories;
+    this.entries = entries;
+    this.directoryTimes = directoryTimes;
+  }
+
+  /**
+   * Resolves the layers again and compares the modification time of every layer directory and the
+   * size and modification time of every file against the resolve time. Unlike resolving, this does
+   * not list any directory.
+   *
+   * @return true if a layer was added or removed or any file or directory of the layers changed
+   * since resolving
+   */
+  public boolean isModified() {
+    if (!this.layerResolver.get().equals(this.layers)) {
+      return true;
+    }
+
+    for (Map.Entry<Path, FileTime> directory : this.directoryTimes.entrySet()) {
+      try {
+        if (!Files.getLastModifiedTime(directory.getKey()).equals(directory.getValue())) {
+          return true;
+        }
+      } catch (IOException e) {
+        return true;
+      }
+    }
+
+    for (Entry entry : this.entries) {
+      try {
+        BasicFileAttributes attrs = Files.readAttributes(entry.source(), BasicFileAttributes.class);
+        if (attrs.size() != entry.size() || !attrs.lastModifiedTime().equals(entry.lastModified())) {
+          return true;
+        }
+      } catch (IOException e) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public FileCopier.Result copyTo(Path dest, TemplateCopyType copyType, FileCopier copier) throws IOException {
+    for (Path directory : this.directories) {
+      Files.createDirectories(dest.resolve(directory.toString()));
+    }
+
+    List<FileCopier.Transfer> transfers = new ArrayList<>(this.entries.size());
+    for (Entry entry : this.entries) {
+      transfers.add(new FileCopier.Transfer(entry.source(), dest.resolve(entry.path().toString()), entry.size(),
+          copyType == TemplateCopyType.LINK));
+    }
+    return copier.copyFiles(transfers);
+  }
+
+  /**
+   * @param path         path relative to the server directory
+   * @param source       absolute path of the template file
+   * @param size         file size at resolve time
+   * @param lastModified modification time at resolve time
+   * @param layer        template layer providing the file
+   */
+  public record Entry(Path path, Path source, long size, FileTime lastModified, Path layer) {
+
+  }
+}
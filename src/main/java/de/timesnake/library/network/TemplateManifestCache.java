@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2023 timesnake
+ */
+
+package de.timesnake.library.network;
+
+import de.timesnake.library.basic.util.ServerType;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static de.timesnake.library.network.Network.BASIS_DIRECTORY;
+import static de.timesnake.library.network.Network.DEFAULT_DIRECTORY;
+
+/**
+ * Caches {@link TemplateManifest}s per type and task. All manifests are dropped as soon as a template
+ * layer changes or a layer is added or removed. Other entries of the type and task directories, e.g.
+ * saves, are ignored.
+ * <p>
+ * Change events are not delivered for writes of other hosts on network storage. Therefore, a manifest
+ * older than {@link #REVALIDATE_INTERVAL} is checked against the modification times of its files
+ * before it is returned. Without a watcher, this check is the only invalidation.
+ */
+public class TemplateManifestCache {
+
+  public static final Duration REVALIDATE_INTERVAL = Duration.ofSeconds(30);
+
+  private final Logger logger = LogManager.getLogger("network-utils");
+
+  private final Path serverTemplatePath;
+  private final Map<String, CachedManifest> manifestByKey = new ConcurrentHashMap<>();
+  private final AtomicLong generation = new AtomicLong();
+  private final DirectoryWatcher watcher;
+  private final List<Runnable> invalidationListeners = new CopyOnWriteArrayList<>();
+  private final Set<Path> layerDirectories = ConcurrentHashMap.newKeySet();
+  private final Set<String> layerNames = ConcurrentHashMap.newKeySet();
+  private volatile NetworkMetrics metrics = NetworkMetrics.NO_OP;
+
+  public TemplateManifestCache(Path serverTemplatePath) {
+    this.serverTemplatePath = serverTemplatePath;
+
+    DirectoryWatcher watcher;
+    try {
+      watcher = new DirectoryWatcher("template-watcher", this::onChange);
+    } catch (IOException | UnsupportedOperationException e) {
+      this.logger.warn("Failed to watch server templates, revalidating every {}s: {}",
+          REVALIDATE_INTERVAL.toSeconds(), e.getMessage());
+      watcher = null;
+    }
+    this.watcher = watcher;
+  }
+
+  public TemplateManifest get(ServerType type, String task) throws IOException {
+    String key = type.getShortName() + "/" + task;
+    CachedManifest cached = this.manifestByKey.get(key);
+    if (cached != null && !this.revalidate(cached)) {
+      cached = null;
+    }
+
+    this.metrics.recordCacheAccess(NetworkMetrics.TEMPLATE_MANIFEST_CACHE, cached != null);
+    if (cached != null) {
+      return cached.manifest();
+    }
+
+    long generation = this.generation.get();
+    this.layerNames.add(type.getShortName());
+    if (task != null) {
+      this.layerNames.add(task);
+    }
+    TemplateManifest manifest = TemplateManifest.resolve(this.serverTemplatePath, type, task, this::register,
+        dir -> {
+          this.layerDirectories.add(dir.toAbsolutePath());
+          this.register(dir);
+        });
+
+    cached = new CachedManifest(manifest, System.nanoTime());
+    this.manifestByKey.put(key, cached);
+    if (this.generation.get() != generation) {
+      this.manifestByKey.remove(key, cached);
+    }
+    return manifest;
+  }
+
+  /**
+   * @return false if the manifest is outdated, all manifests are dropped in this case
+   */
+  private boolean revalidate(CachedManifest cached) {
+    long now = System.nanoTime();
+    long validatedAt = cached.validatedAt().get();
+    if (now - validatedAt < REVALIDATE_INTERVAL.toNanos()) {
+      return true;
+    }
+
+    if (cached.manifest().isModified()) {
+      this.logger.info("Server templates changed without change event, dropping cached manifests");
+      this.invalidate();
+      return false;
+    }
+
+    cached.validatedAt().compareAndSet(validatedAt, now);
+    return true;
+  }
+
+  private void register(Path dir) {
+    if (this.watcher != null) {
+      this.watcher.register(dir);
+    }
+  }
+
+  private void onChange(Path changed) {
+    if (changed == null || this.layerDirectories.contains(changed.getParent())) {
+      this.invalidate();
+      return;
+    }
+
+    // type or task directory, only layers matter
+    String name = changed.getFileName().toString();
+    if (name.equals(BASIS_DIRECTORY) || name.equals(DEFAULT_DIRECTORY) || this.layerNames.contains(name)) {
+      this.invalidate();
+    }
+  }
+
+  public void invalidate() {
+    this.generation.incrementAndGet();
+    this.manifestByKey.clear();
+    this.invalidationListeners.forEach(Runnable::run);
+  }
+
+  public void close() {
+    if (this.watcher != null) {
+      try {
+        this.watcher.close();
+      } catch (IOException e) {
+        this.logger.warn("Failed to close template watcher: {}", e.getMessage());
+      }
+    }
+  }
+
+  public void setMetrics(NetworkMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  public void addInvalidationListener(Runnable listener) {
+    this.invalidationListeners.add(listener);
+  }
+
+  private record CachedManifest(TemplateManifest manifest, AtomicLong validatedAt) {
+
+    CachedManifest(TemplateManifest manifest, long validatedAt) {
+      this(manifest, new AtomicLong(validatedAt));
+    }
+  }
+}
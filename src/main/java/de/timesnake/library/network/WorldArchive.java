@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2023 timesnake
+ */
+
+package de.timesnake.library.network;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Compressed world templates. A world directory is packed into a zip archive, its central directory
+ * serves as index to extract the entries in parallel.
+ * <p>
+ * The archive comment records a validity token of the source, taken before packing: the real path of
+ * the world directory, the modification times of the directory, its level file and its region
+ * directory, and whether regions were filtered. Minecraft rewrites the level file on every save and
+ * exports create a new directory, so the token changes with every save or export without walking the
+ * world. Region files replaced by hand without touching the level file are not detected, the world
+ * has to be packed again then. See {@link #isCurrent(Path, Path, boolean)}.
+ */
+public class WorldArchive {
+
+  public static final String FILE_EXTENSION = ".zip";
+
+  private static final String TMP_SUFFIX = ".tmp";
+  private static final String SOURCE_SEPARATOR = " ";
+  private static final String REGION_DIRECTORY = "region";
+
+  private final FileCopier copier;
+  private final int compressionLevel;
+
+  public WorldArchive(FileCopier copier) {
+    this(copier, Deflater.DEFAULT_COMPRESSION);
+  }
+
+  /**
+   * @param compressionLevel deflate level used to pack archives, see {@link Deflater}
+   */
+  public WorldArchive(FileCopier copier, int compressionLevel) {
+    this.copier = copier;
+    this.compressionLevel = compressionLevel;
+  }
+
+  public Result pack(Path src, Path archive) throws IOException {
+    return this.pack(src, archive, null);
+  }
+
+  /**
+   * Packs the world directory into the archive, replacing it atomically.
+   *
+   * @param src    real path of the world directory
+   * @param filter files to pack, e.g. a {@link RegionFilter}, null for all
+   */
+  public Result pack(Path src, Path archive, Predicate<Path> filter) throws IOException {
+    Files.createDirectories(archive.getParent());
+    Path tmp = archive.resolveSibling(archive.getFileName() + TMP_SUFFIX);
+
+    int[] files = {0};
+    long[] bytes = {0};
+    // taken before reading, a world saved while packing makes the archive stale
+    String source = source(src, filter != null);
+
+    try (ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+      out.setLevel(this.compressionLevel);
+
+      Files.walkFileTree(src, new SimpleFileVisitor<>() {
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+          if (!dir.equals(src)) {
+            out.putNextEntry(new ZipEntry(entryName(src, dir) + "/"));
+            out.closeEntry();
+          }
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+          if (filter != null && !filter.test(file)) {
+            return FileVisitResult.CONTINUE;
+          }
+
+          ZipEntry entry = new ZipEntry(entryName(src, file));
+          entry.setLastModifiedTime(attrs.lastModifiedTime());
+          out.putNextEntry(entry);
+          Files.copy(file, out);
+          out.closeEntry();
+          files[0]++;
+          bytes[0] += attrs.size();
+          return FileVisitResult.CONTINUE;
+        }
+      });
+
+      out.setComment(source);
+    } catch (IOException e) {
+      Files.deleteIfExists(tmp);
+      throw e;
+    }
+
+    Files.move(tmp, archive, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    return new Result(files[0], bytes[0], Files.size(archive));
+  }
+
+  /**
+   * Extracts the archive into the directory, entries are decompressed in parallel.
+   */
+  public Result extract(Path archive, Path dest) throws IOException {
+    Path root = dest.toAbsolutePath().normalize();
+    Files.createDirectories(root);
+
+    try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+      List<ZipEntry> entries = new ArrayList<>(zipFile.size());
+      Enumeration<? extends ZipEntry> enumeration = zipFile.entries();
+      while (enumeration.hasMoreElements()) {
+        ZipEntry entry = enumeration.nextElement();
+        Path target = resolve(root, entry);
+        if (entry.isDirectory()) {
+          Files.createDirectories(target);
+        } else {
+          Files.createDirectories(target.getParent());
+          entries.add(entry);
+        }
+      }
+
+      AtomicInteger files = new AtomicInteger();
+      AtomicLong bytes = new AtomicLong();
+
+      NetworkFileUtils.forEachParallel(entries, this.copier.getParallelism(), entry -> {
+        Path target = resolve(root, entry);
+        try (InputStream in = zipFile.getInputStream(entry)) {
+          bytes.addAndGet(Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING));
+        }
+        FileTime lastModified = entry.getLastModifiedTime();
+        if (lastModified != null) {
+          Files.setLastModifiedTime(target, lastModified);
+        }
+        files.incrementAndGet();
+      });
+
+      return new Result(files.get(), bytes.get(), Files.size(archive));
+    }
+  }
+
+  /**
+   * Compares the validity token of the archive with the current one of the world, without walking the
+   * world.
+   *
+   * @param filtered whether the world is copied with a region filter
+   * @return true if the archive was packed from the world directory, which was not saved since, with
+   * the same filtering
+   */
+  public boolean isCurrent(Path archive, Path src, boolean filtered) throws IOException {
+    String comment;
+    try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+      comment = zipFile.getComment();
+    }
+    return comment != null && comment.equals(source(src.toRealPath(), filtered));
+  }
+
+  private static String source(Path realSrc, boolean filtered) {
+    return filtered + SOURCE_SEPARATOR + lastModified(realSrc)
+        + SOURCE_SEPARATOR + lastModified(realSrc.resolve(Network.WORLD_LEVEL_FILE_NAME))
+        + SOURCE_SEPARATOR + lastModified(realSrc.resolve(REGION_DIRECTORY))
+        + SOURCE_SEPARATOR + realSrc;
+  }
+
+  private static long lastModified(Path path) {
+    try {
+      return Files.getLastModifiedTime(path).toMillis();
+    } catch (IOException e) {
+      return -1;
+    }
+  }
+
+  private static String entryName(Path root, Path path) {
+    return root.relativize(path).toString().replace(path.getFileSystem().getSeparator(), "/");
+  }
+
+  private static Path resolve(Path root, ZipEntry entry) throws IOException {
+    Path target = root.resolve(entry.getName()).normalize();
+    if (!target.startsWith(root)) {
+      throw new IOException("archive entry outside of target directory: " + entry.getName());
+    }
+    return target;
+  }
+
+  /**
+   * @param files        files packed or extracted
+   * @param bytes        uncompressed bytes of the files
+   * @param archiveBytes size of the archive
+   */
+  public record Result(int files, long bytes, long archiveBytes) {
+
+  }
+}
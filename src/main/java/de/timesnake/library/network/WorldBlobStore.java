@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2023 timesnake
+ */
+
+package de.timesnake.library.network;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Content-addressed store of world files. Deduplicating a world directory moves each file into the
+ * store under its SHA-256 hash and modification time and replaces it by a hardlink to the blob, so
+ * identical files of different world templates share one inode on disk and in the page cache. The
+ * modification time is part of the key, since linked files share it and exports and archives detect
+ * changes by it.
+ * <p>
+ * Deduplicated files must not be written in place, a write would change every world sharing the
+ * blob. Only deduplicate templates which are copied into servers ({@link NetworkServer.CopyType#COPY}),
+ * not templates linked into running servers ({@link NetworkServer.CopyType#SYNC}). Exports replace files
+ * instead of writing them in place and are safe. Linked world templates, e.g. exports or generations,
+ * are not descended into.
+ * <p>
+ * Servers copying a template still copy the bytes of the blobs, only the templates share them.
+ * <p>
+ * Deduplication and garbage collection hold an exclusive lock on the store, also across processes.
+ */
+public class WorldBlobStore {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final String TMP_SUFFIX = ".blob-tmp";
+  private static final String LOCK_FILE_NAME = ".lock";
+
+  // file locks are held per JVM, so is this lock
+  private static final ReentrantLock LOCK = new ReentrantLock();
+
+  private final Logger logger = LogManager.getLogger("network-utils");
+
+  private final Path blobsPath;
+  private final int parallelism;
+
+  public WorldBlobStore(Path blobsPath) {
+    this(blobsPath, FileCopier.DEFAULT_PARALLELISM);
+  }
+
+  public WorldBlobStore(Path blobsPath, int parallelism) {
+    this.blobsPath = blobsPath;
+    this.parallelism = parallelism;
+  }
+
+  public Path getBlobsPath() {
+    return blobsPath;
+  }
+
+  /**
+   * Replaces all files below the directory by hardlinks to their blobs, adding missing blobs. Hidden
+   * directories (e.g. export staging directories) are skipped.
+   *
+   * @param excluded real paths of directories to skip, e.g. world templates linked into servers
+   */
+  public Result deduplicate(Path directory, Collection<Path> excluded) throws IOException {
+    if (!Files.isDirectory(directory)) {
+      return new Result(0, 0, 0);
+    }
+
+    return this.locked(() -> {
+      List<Path> files = new ArrayList<>();
+      Files.walkFileTree(directory, new SimpleFileVisitor<>() {
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+          if (!dir.equals(directory) && dir.getFileName().toString().startsWith(".")
+              || excluded.contains(dir.toRealPath())) {
+            return FileVisitResult.SKIP_SUBTREE;
+          }
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+          if (attrs.isRegularFile() && attrs.size() > 0) {
+            files.add(file);
+          }
+          return FileVisitResult.CONTINUE;
+        }
+      });
+
+      AtomicInteger linkedFiles = new AtomicInteger();
+      AtomicLong savedBytes = new AtomicLong();
+
+      NetworkFileUtils.forEachParallel(files, this.parallelism, file -> {
+        long saved = this.store(file);
+        if (saved >= 0) {
+          linkedFiles.incrementAndGet();
+          savedBytes.addAndGet(saved);
+        }
+      });
+
+      return new Result(files.size(), linkedFiles.get(), savedBytes.get());
+    });
+  }
+
+  /**
+   * Deletes all blobs not linked by any world file anymore.
+   */
+  public GcResult collectGarbage() throws IOException {
+    if (!Files.isDirectory(this.blobsPath)) {
+      return new GcResult(0, 0);
+    }
+
+    return this.locked(() -> {
+      int[] deletedBlobs = {0};
+      long[] freedBytes = {0};
+
+      Files.walkFileTree(this.blobsPath, new SimpleFileVisitor<>() {
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+          if (!file.getFileName().toString().equals(LOCK_FILE_NAME) && linkCount(file) == 1) {
+            Files.deleteIfExists(file);
+            deletedBlobs[0]++;
+            freedBytes[0] += attrs.size();
+          }
+          return FileVisitResult.CONTINUE;
+        }
+      });
+
+      return new GcResult(deletedBlobs[0], freedBytes[0]);
+    });
+  }
+
+  private <T> T locked(NetworkFileUtils.IOSupplier<T> action) throws IOException {
+    Files.createDirectories(this.blobsPath);
+    LOCK.lock();
+    try (FileChannel channel = FileChannel.open(this.blobsPath.resolve(LOCK_FILE_NAME), StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE);
+         FileLock ignored = channel.lock()) {
+      return action.get();
+    } finally {
+      LOCK.unlock();
+    }
+  }
+
+  /**
+   * @return bytes saved by linking the file to an existing blob, 0 if the file became a new blob, -1
+   * if the file is kept as is
+   */
+  private long store(Path file) throws IOException {
+    String hash = hash(file);
+    FileTime lastModified = Files.getLastModifiedTime(file);
+    Path blob = this.blobsPath.resolve(hash.substring(0, 2)).resolve(hash + "-" + lastModified.toMillis());
+
+    if (!Files.exists(blob)) {
+      Files.createDirectories(blob.getParent());
+      try {
+        Files.createLink(blob, file);
+        return 0;
+      } catch (FileAlreadyExistsException ignored) {
+        // stored concurrently from another file
+      }
+    }
+
+    if (Files.isSameFile(blob, file)) {
+      return 0;
+    }
+
+    if (!Files.getLastModifiedTime(blob).equals(lastModified)) {
+      // same millisecond, but not the same time
+      return -1;
+    }
+
+    if (Files.mismatch(blob, file) != -1) {
+      this.logger.warn("Blob {} does not match its hash anymore, keeping {}", blob, file);
+      return -1;
+    }
+
+    long size = Files.size(file);
+    Path tmp = file.resolveSibling(file.getFileName() + TMP_SUFFIX);
+    Files.deleteIfExists(tmp);
+    Files.createLink(tmp, blob);
+    try {
+      Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      Files.deleteIfExists(tmp);
+      throw e;
+    }
+    return size;
+  }
+
+  private static String hash(Path file) throws IOException {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+      while (channel.read(buffer) >= 0) {
+        buffer.flip();
+        digest.update(buffer);
+        buffer.clear();
+      }
+    }
+
+    return HexFormat.of().formatHex(digest.digest());
+  }
+
+  private static int linkCount(Path file) throws IOException {
+    try {
+      return (int) Files.getAttribute(file, "unix:nlink", LinkOption.NOFOLLOW_LINKS);
+    } catch (UnsupportedOperationException | IllegalArgumentException e) {
+      // unknown, keep the blob
+      return Integer.MAX_VALUE;
+    }
+  }
+
+  /**
+   * @param files       regular files found
+   * @param linkedFiles files linked to a blob
+   * @param savedBytes  bytes freed by linking files to already stored blobs
+   */
+  public record Result(int files, int linkedFiles, long savedBytes) {
+
+  }
+
+  /**
+   * @param deletedBlobs unreferenced blobs deleted
+   * @param freedBytes   bytes of the deleted blobs
+   */
+  public record GcResult(int deletedBlobs, long freedBytes) {
+
+  }
+}
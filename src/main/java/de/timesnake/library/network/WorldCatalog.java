@@ -0,0 +1,254 @@
+/*
+ * Copyright (C) 2023 timesnake
+ */
+
+package de.timesnake.library.network;
+
+import de.timesnake.library.basic.util.ServerType;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Immutable in-memory snapshot of the world templates (type, task, world) with their modification
+ * time. The world template directories are watched down to the task level, the snapshot is rebuilt on
+ * the next access after a change. Indexing does not descend into the worlds, their size is computed
+ * on request. Directories containing a level file are worlds and not watched, so servers writing a
+ * linked world do not invalidate the snapshot.
+ * <p>
+ * Change events are not delivered for writes of other hosts on network storage. Therefore, a snapshot
+ * older than {@link #REVALIDATE_INTERVAL} is rebuilt, and the listeners are notified if worlds were
+ * added or removed.
+ */
+public class WorldCatalog {
+
+  public static final Duration REVALIDATE_INTERVAL = Duration.ofSeconds(30);
+
+  private static final int WORLD_DEPTH = 3;
+
+  private final Logger logger = LogManager.getLogger("network-utils");
+
+  private final Path worldsTemplatePath;
+  private final DirectoryWatcher watcher;
+  private final AtomicLong generation = new AtomicLong();
+  private final List<Runnable> invalidationListeners = new CopyOnWriteArrayList<>();
+
+  private volatile Snapshot snapshot;
+
+  public WorldCatalog(Path worldsTemplatePath) {
+    this.worldsTemplatePath = worldsTemplatePath.toAbsolutePath();
+
+    DirectoryWatcher watcher;
+    try {
+      watcher = new DirectoryWatcher("world-watcher", changed -> this.invalidate());
+    } catch (IOException | UnsupportedOperationException e) {
+      this.logger.warn("Failed to watch world templates, caching disabled: {}", e.getMessage());
+      watcher = null;
+    }
+    this.watcher = watcher;
+  }
+
+  /**
+   * Lists the worlds of the task. Falls back to the type directory if the task has no directory and
+   * to the world template directory if the type has none.
+   */
+  public List<World> getWorlds(ServerType type, String task) {
+    if (this.watcher == null) {
+      Path path = NetworkFileUtils.resolveWorldTemplatePath(this.worldsTemplatePath, type, task);
+      return this.index(path, 1).getOrDefault("", List.of());
+    }
+
+    Snapshot snapshot = this.getSnapshot();
+
+    String typeKey = type.getShortName();
+    if (!snapshot.worldsByDirectory().containsKey(typeKey)) {
+      return snapshot.worldsByDirectory().getOrDefault("", List.of());
+    }
+
+    if (task != null) {
+      List<World> worlds = snapshot.worldsByDirectory().get(typeKey + "/" + task);
+      if (worlds != null) {
+        return worlds;
+      }
+    }
+    return snapshot.worldsByDirectory().get(typeKey);
+  }
+
+  public void invalidate() {
+    this.generation.incrementAndGet();
+    this.snapshot = null;
+    this.invalidationListeners.forEach(Runnable::run);
+  }
+
+  /**
+   * Adds a listener called on every invalidation, including changes seen by the watcher.
+   */
+  public void addInvalidationListener(Runnable listener) {
+    this.invalidationListeners.add(listener);
+  }
+
+  public void close() {
+    if (this.watcher != null) {
+      try {
+        this.watcher.close();
+      } catch (IOException e) {
+        this.logger.warn("Failed to close world watcher: {}", e.getMessage());
+      }
+    }
+  }
+
+  private Snapshot getSnapshot() {
+    Snapshot snapshot = this.snapshot;
+    if (snapshot != null && System.nanoTime() - snapshot.indexedAt() < REVALIDATE_INTERVAL.toNanos()) {
+      return snapshot;
+    }
+
+    long generation = this.generation.get();
+    Snapshot indexed = new Snapshot(this.index(this.worldsTemplatePath, WORLD_DEPTH), System.nanoTime());
+
+    if (snapshot != null && !snapshot.hasSameWorlds(indexed) && this.generation.compareAndSet(generation,
+        generation + 1)) {
+      this.logger.info("World templates changed without change event, rebuilt world catalog");
+      this.invalidationListeners.forEach(Runnable::run);
+      generation++;
+    }
+
+    if (this.generation.get() == generation) {
+      this.snapshot = indexed;
+    }
+    return indexed;
+  }
+
+  /**
+   * Indexes the directory down to the given depth, without descending into the worlds.
+   *
+   * @return entries by directory relative to the root
+   */
+  private Map<String, List<World>> index(Path root, int maxDepth) {
+    Map<Path, List<World>> childrenByDirectory = new HashMap<>();
+
+    if (Files.isDirectory(root)) {
+      try {
+        Files.walkFileTree(root, Set.of(), maxDepth, new SimpleFileVisitor<>() {
+          @Override
+          public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+            if (!dir.equals(root)) {
+              if (dir.getFileName().toString().startsWith(".")) {
+                return FileVisitResult.SKIP_SUBTREE;
+              }
+              this.add(dir, attrs);
+
+              // world above the maximum depth, e.g. directly in a type directory
+              if (Files.exists(dir.resolve(Network.WORLD_LEVEL_FILE_NAME))) {
+                return FileVisitResult.SKIP_SUBTREE;
+              }
+            }
+
+            childrenByDirectory.put(dir, new ArrayList<>());
+            if (watcher != null) {
+              watcher.register(dir);
+            }
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+            // files and, at the maximum depth, world directories
+            if (!file.getFileName().toString().startsWith(".")) {
+              this.add(file, attrs);
+            }
+            return FileVisitResult.CONTINUE;
+          }
+
+          private void add(Path path, BasicFileAttributes attrs) {
+            List<World> children = childrenByDirectory.get(path.getParent());
+            if (children != null) {
+              children.add(new World(path.getFileName().toString(), path, attrs.lastModifiedTime()));
+            }
+          }
+
+          @Override
+          public FileVisitResult visitFileFailed(Path file, IOException exc) {
+            return FileVisitResult.CONTINUE;
+          }
+        });
+      } catch (IOException e) {
+        this.logger.warn("Failed to index world templates: {}", e.getMessage());
+      }
+    }
+
+    Map<String, List<World>> worldsByDirectory = new HashMap<>();
+    childrenByDirectory.forEach((dir, children) -> {
+      children.sort(Comparator.comparing(World::name));
+      String key = root.relativize(dir).toString().replace(dir.getFileSystem().getSeparator(), "/");
+      worldsByDirectory.put(key, List.copyOf(children));
+    });
+
+    return Map.copyOf(worldsByDirectory);
+  }
+
+  /**
+   * @param lastModified modification time of the world directory
+   */
+  public record World(String name, Path path, FileTime lastModified) {
+
+    /**
+     * Walks the world on every call, sizes are not part of the index.
+     *
+     * @return total size of all files of the world, 0 if it can not be read
+     */
+    public long size() {
+      long[] size = {0};
+      try {
+        Files.walkFileTree(this.path, new SimpleFileVisitor<>() {
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+            size[0] += attrs.size();
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult visitFileFailed(Path file, IOException exc) {
+            return FileVisitResult.CONTINUE;
+          }
+        });
+      } catch (IOException e) {
+        return size[0];
+      }
+      return size[0];
+    }
+  }
+
+  /**
+   * @param worldsByDirectory worlds by directory relative to the world templates, e.g. {@code game/bw}
+   * @param indexedAt         {@link System#nanoTime()} of indexing
+   */
+  private record Snapshot(Map<String, List<World>> worldsByDirectory, long indexedAt) {
+
+    /**
+     * @return true if both contain the same worlds, ignoring modification times
+     */
+    private boolean hasSameWorlds(Snapshot other) {
+      if (!this.worldsByDirectory.keySet().equals(other.worldsByDirectory.keySet())) {
+        return false;
+      }
+
+      for (Map.Entry<String, List<World>> entry : this.worldsByDirectory.entrySet()) {
+        List<World> otherWorlds = other.worldsByDirectory.get(entry.getKey());
+        if (!entry.getValue().stream().map(World::name).toList()
+            .equals(otherWorlds.stream().map(World::name).toList())) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
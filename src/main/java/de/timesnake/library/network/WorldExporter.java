@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2023 timesnake
+ */
+
+package de.timesnake.library.network;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Exports a world directory into a template incrementally. The new template is assembled in a
+ * staging directory: files unchanged since the last export (same size and modification time,
+ * optionally same content) are hardlinked from the current template, only changed files are copied.
+ * Stale files are dropped.
+ * <p>
+ * The staged directory is moved to the exports directory and the template is replaced by a symlink
+ * to it atomically, so readers resolving the template see either the previous or the new export. The
+ * previous export is deleted afterwards, readers still copying from it fail and have to start again
+ * from the template. A template which is still a directory is moved away before it is replaced, it is
+ * missing for this moment once.
+ * <p>
+ * Staging directories, exports and replaced templates are kept in separate directories on the same
+ * file system, so they are never seen as worlds of a task.
+ */
+public class WorldExporter {
+
+  public static final String STAGING_PREFIX = ".staging-";
+  public static final String OLD_PREFIX = ".old-";
+  public static final String TMP_LINK_PREFIX = ".link-";
+
+  private final FileCopier copier;
+  private final boolean compareContent;
+  private final Path stagingPath;
+  private final Path exportsPath;
+
+  /**
+   * @param compareContent compare the content of files with equal size but different modification time
+   *                       instead of copying them
+   * @param stagingPath    directory for staging and replaced templates, on the file system of the
+   *                       templates
+   * @param exportsPath    directory for the exports templates link to, on the file system of the
+   *                       templates
+   */
+  public WorldExporter(FileCopier copier, boolean compareContent, Path stagingPath, Path exportsPath) {
+    this.copier = copier;
+    this.compareContent = compareContent;
+    this.stagingPath = stagingPath;
+    this.exportsPath = exportsPath;
+  }
+
+  public Result export(Path src, Path dest) throws IOException {
+    Path staging = this.createStagingPath(STAGING_PREFIX, dest);
+
+    Result result;
+    try {
+      result = this.stage(src, Files.isDirectory(dest) ? dest.toRealPath() : null, staging);
+    } catch (IOException e) {
+      FileUtils.deleteDirectory(staging.toFile());
+      throw e;
+    }
+
+    this.publish(staging, dest);
+    return result;
+  }
+
+  /**
+   * Exports the world into a new directory, linking files unchanged since the previous export.
+   *
+   * @param previous directory of the previous export, may be null
+   * @param target   directory to create, must not exist
+   */
+  public Result snapshot(Path src, Path previous, Path target) throws IOException {
+    Path staging = this.createStagingPath(STAGING_PREFIX, target);
+
+    Result result;
+    try {
+      result = this.stage(src, previous, staging);
+      Files.move(staging, target, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      FileUtils.deleteDirectory(staging.toFile());
+      throw e;
+    }
+    return result;
+  }
+
+  private Path createStagingPath(String prefix, Path dest) throws IOException {
+    Files.createDirectories(this.stagingPath);
+    return this.stagingPath.resolve(prefix + dest.getFileName() + "-" + System.nanoTime());
+  }
+
+  private Result stage(Path src, Path dest, Path staging) throws IOException {
+    boolean destExists = dest != null && Files.isDirectory(dest);
+    List<FileCopier.Transfer> transfers = new ArrayList<>();
+    int[] linked = {0};
+
+    Files.walkFileTree(src, new SimpleFileVisitor<>() {
+      @Override
+      public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+        Files.createDirectories(staging.resolve(src.relativize(dir).toString()));
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+        String relative = src.relativize(file).toString();
+        Path target = staging.resolve(relative);
+
+        if (destExists) {
+          Path current = dest.resolve(relative);
+          if (WorldExporter.this.isUnchanged(file, attrs, current)) {
+            try {
+              Files.createLink(target, current);
+              linked[0]++;
+              return FileVisitResult.CONTINUE;
+            } catch (UnsupportedOperationException | FileSystemException ignored) {
+              // fall back to copy
+            }
+          }
+        }
+
+        transfers.add(new FileCopier.Transfer(file, target, attrs.size(), false));
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+        // deleted by the server while exporting
+        if (exc instanceof NoSuchFileException) {
+          return FileVisitResult.CONTINUE;
+        }
+        throw exc;
+      }
+    });
+
+    FileCopier.Result copied = this.copier.copyFiles(transfers);
+    return new Result(copied.files(), copied.bytes(), linked[0]);
+  }
+
+  private boolean isUnchanged(Path file, BasicFileAttributes attrs, Path current) throws IOException {
+    BasicFileAttributes currentAttrs;
+    try {
+      currentAttrs = Files.readAttributes(current, BasicFileAttributes.class);
+    } catch (NoSuchFileException e) {
+      return false;
+    }
+
+    if (!currentAttrs.isRegularFile() || currentAttrs.size() != attrs.size()) {
+      return false;
+    }
+
+    if (currentAttrs.lastModifiedTime().equals(attrs.lastModifiedTime())) {
+      return true;
+    }
+
+    return this.compareContent && Files.mismatch(file, current) == -1;
+  }
+
+  private void publish(Path staging, Path dest) throws IOException {
+    Files.createDirectories(this.exportsPath);
+    Path export = this.exportsPath.resolve(dest.getFileName() + "-" + System.nanoTime()).toAbsolutePath();
+    try {
+      Files.move(staging, export, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      FileUtils.deleteDirectory(staging.toFile());
+      throw e;
+    }
+
+    Path parent = dest.toAbsolutePath().getParent();
+    Files.createDirectories(parent);
+    Path link = parent.resolve(TMP_LINK_PREFIX + dest.getFileName() + "-" + System.nanoTime());
+    Files.createSymbolicLink(link, parent.relativize(export));
+
+    Path old = null;
+    try {
+      if (Files.isSymbolicLink(dest)) {
+        // only previous exports are deleted, a generation of a versioned template is kept
+        Path target = parent.resolve(Files.readSymbolicLink(dest)).normalize();
+        if (target.startsWith(this.exportsPath.toAbsolutePath().normalize())) {
+          old = target;
+        }
+      } else if (Files.exists(dest, LinkOption.NOFOLLOW_LINKS)) {
+        old = this.createStagingPath(OLD_PREFIX, dest);
+        Files.move(dest, old, StandardCopyOption.ATOMIC_MOVE);
+      }
+
+      Files.move(link, dest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      Files.deleteIfExists(link);
+      if (old != null && !Files.exists(dest, LinkOption.NOFOLLOW_LINKS)) {
+        Files.move(old, dest, StandardCopyOption.ATOMIC_MOVE);
+      }
+      NetworkFileUtils.deleteRecursively(export);
+      throw e;
+    }
+
+    if (old != null) {
+      try {
+        NetworkFileUtils.deleteRecursively(old);
+      } catch (IOException ignored) {
+        // left in the staging or exports directory, outside the templates
+      }
+    }
+  }
+
+  /**
+   * @param copiedFiles files copied because they changed or are new
+   * @param copiedBytes bytes of the copied files
+   * @param linkedFiles unchanged files linked from the previous template
+   */
+  public record Result(int copiedFiles, long copiedBytes, int linkedFiles) {
+
+  }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2023 timesnake
+ */
+
+package de.timesnake.library.network;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Versioned world templates. Every export creates a new generation directory below the versions
+ * directory, files unchanged since the previous generation are hardlinked. The world template itself
+ * is a symlink to the current generation, which is replaced atomically, so publishing, rollback and
+ * pinning are constant time.
+ * <p>
+ * Generations share unchanged files and must not be written in place. Servers syncing a versioned
+ * world ({@link NetworkServer.CopyType#SYNC}) get a private copy of the current generation, changes
+ * are published by exporting it. Servers pinned to a generation link it and must not save it. Every
+ * pin is recorded by a pin file, so cleaning does not need to search the servers for links.
+ */
+public class WorldVersions {
+
+  private static final String TMP_LINK_PREFIX = ".link-";
+  private static final String PINS_DIR_NAME = ".pins";
+
+  private final Logger logger = LogManager.getLogger("network-utils");
+
+  private final Path worldsTemplatePath;
+  private final Path versionsPath;
+  private final Path exportsPath;
+
+  /**
+   * @param versionsPath directory to create the generations in, outside the world templates to not copy
+   *                     them into servers
+   * @param exportsPath  directory of the exports of unversioned templates, see {@link WorldExporter}
+   */
+  public WorldVersions(Path worldsTemplatePath, Path versionsPath, Path exportsPath) {
+    this.worldsTemplatePath = worldsTemplatePath;
+    this.versionsPath = versionsPath;
+    this.exportsPath = exportsPath;
+  }
+
+  /**
+   * @param world path of the world relative to the world templates, e.g. {@code game/bw/map}
+   * @return the directory containing the generations of the world
+   */
+  public Path getVersionsPath(Path world) {
+    return this.versionsPath.resolve(world);
+  }
+
+  public Path getVersionPath(Path world, int version) {
+    return this.getVersionsPath(world).resolve(String.valueOf(version));
+  }
+
+  /**
+   * @return all generations of the world, ascending
+   */
+  public List<Integer> getVersions(Path world) {
+    List<Integer> versions = new ArrayList<>();
+    String[] names = this.getVersionsPath(world).toFile().list();
+    if (names != null) {
+      for (String name : names) {
+        try {
+          versions.add(Integer.parseInt(name));
+        } catch (NumberFormatException ignored) {
+          // staging or pins directory
+        }
+      }
+    }
+    versions.sort(Integer::compare);
+    return versions;
+  }
+
+  /**
+   * @return the generation the world template points to, null if the world is not versioned
+   */
+  public Integer getCurrentVersion(Path world) {
+    Path template = this.worldsTemplatePath.resolve(world);
+    if (!Files.isSymbolicLink(template)) {
+      return null;
+    }
+
+    try {
+      Path target = template.getParent().resolve(Files.readSymbolicLink(template)).normalize();
+      if (!target.getParent().equals(this.getVersionsPath(world).normalize())) {
+        return null;
+      }
+      return Integer.parseInt(target.getFileName().toString());
+    } catch (IOException | NumberFormatException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Exports the world directory into a new generation and makes it current. An unversioned world
+   * template is adopted as first generation before.
+   *
+   * @return the new generation
+   */
+  public synchronized int publish(Path src, Path world, WorldExporter exporter) throws IOException {
+    this.adopt(world);
+
+    Integer current = this.getCurrentVersion(world);
+    List<Integer> versions = this.getVersions(world);
+    int version = versions.isEmpty() ? 1 : versions.get(versions.size() - 1) + 1;
+
+    Path previous = current != null ? this.getVersionPath(world, current) : null;
+    Files.createDirectories(this.getVersionsPath(world));
+    exporter.snapshot(src, previous, this.getVersionPath(world, version));
+
+    this.setCurrentVersion(world, version);
+    return version;
+  }
+
+  /**
+   * Points the world template to the generation. An unversioned world template is adopted as
+   * generation before.
+   */
+  public synchronized void setCurrentVersion(Path world, int version) throws IOException {
+    this.adopt(world);
+    this.link(world, version);
+  }
+
+  private void link(Path world, int version) throws IOException {
+    Path target = this.getVersionPath(world, version);
+    if (!Files.isDirectory(target)) {
+      throw new NoSuchFileException(target.toString(), null, "world version does not exist");
+    }
+
+    Path template = this.worldsTemplatePath.resolve(world);
+    if (Files.exists(template, LinkOption.NOFOLLOW_LINKS) && !Files.isSymbolicLink(template)) {
+      throw new FileAlreadyExistsException(template.toString(), null, "world template is not versioned");
+    }
+
+    Files.createDirectories(template.getParent());
+    Path link = template.resolveSibling(TMP_LINK_PREFIX + template.getFileName() + "-" + System.nanoTime());
+    Files.createSymbolicLink(link, template.getParent().relativize(target));
+    try {
+      Files.move(link, template, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      Files.deleteIfExists(link);
+      throw e;
+    }
+  }
+
+  /**
+   * Records the link to the generation, the generation is kept by {@link #clean(Path, int)} as long as
+   * the link points to it.
+   */
+  public synchronized void pin(Path world, int version, Path link) throws IOException {
+    Path pins = this.getPinsPath(world, version);
+    Files.createDirectories(pins);
+
+    String linkPath = link.toAbsolutePath().normalize().toString();
+    // named by the link, pinning the same link again replaces its pin
+    String name = UUID.nameUUIDFromBytes(linkPath.getBytes(StandardCharsets.UTF_8)).toString();
+    Files.writeString(pins.resolve(name), linkPath);
+  }
+
+  private Path getPinsPath(Path world, int version) {
+    return this.getVersionsPath(world).resolve(PINS_DIR_NAME).resolve(String.valueOf(version));
+  }
+
+  /**
+   * Deletes the oldest generations, keeping the given number of newest generations, the current one
+   * and the pinned ones. Pin files of links removed or pointing elsewhere are deleted.
+   *
+   * @return the deleted generations
+   */
+  public synchronized List<Integer> clean(Path world, int retention) {
+    Integer current = this.getCurrentVersion(world);
+    List<Integer> versions = this.getVersions(world);
+    List<Integer> deleted = new ArrayList<>();
+
+    for (int i = 0; i < versions.size() - retention; i++) {
+      int version = versions.get(i);
+      Path path = this.getVersionPath(world, version);
+      if (Integer.valueOf(version).equals(current) || this.isPinned(world, version)) {
+        continue;
+      }
+
+      try {
+        NetworkFileUtils.deleteRecursively(path);
+        NetworkFileUtils.deleteRecursively(this.getPinsPath(world, version));
+        deleted.add(version);
+      } catch (IOException e) {
+        this.logger.warn("Failed to delete world version {}: {}", path, e.getMessage());
+      }
+    }
+    return deleted;
+  }
+
+  private boolean isPinned(Path world, int version) {
+    Path pins = this.getPinsPath(world, version);
+    File[] pinFiles = pins.toFile().listFiles();
+    if (pinFiles == null) {
+      return false;
+    }
+
+    Path realPath;
+    try {
+      realPath = this.getVersionPath(world, version).toRealPath();
+    } catch (IOException e) {
+      return false;
+    }
+
+    boolean pinned = false;
+    for (File pinFile : pinFiles) {
+      try {
+        Path link = Path.of(Files.readString(pinFile.toPath()));
+        if (Files.isSymbolicLink(link) && link.toRealPath().equals(realPath)) {
+          pinned = true;
+          continue;
+        }
+      } catch (IOException ignored) {
+        // link removed or dangling
+      }
+
+      try {
+        Files.deleteIfExists(pinFile.toPath());
+      } catch (IOException e) {
+        // keep the generation if the pin can not be checked
+        pinned = true;
+      }
+    }
+    return pinned;
+  }
+
+  /**
+   * Moves an unversioned world template, a directory or a link to an export of the
+   * {@link WorldExporter}, into a new generation.
+   */
+  private void adopt(Path world) throws IOException {
+    Path template = this.worldsTemplatePath.resolve(world);
+    Path src;
+    if (Files.isDirectory(template, LinkOption.NOFOLLOW_LINKS)) {
+      src = template;
+    } else if (Files.isSymbolicLink(template) && Files.isDirectory(this.exportsPath)
+        && template.toRealPath().startsWith(this.exportsPath.toRealPath())) {
+      src = template.toRealPath();
+    } else {
+      return;
+    }
+
+    List<Integer> versions = this.getVersions(world);
+    int version = versions.isEmpty() ? 1 : versions.get(versions.size() - 1) + 1;
+
+    Files.createDirectories(this.getVersionsPath(world));
+    Files.move(src, this.getVersionPath(world, version), StandardCopyOption.ATOMIC_MOVE);
+    this.link(world, version);
+  }
+}